@@ -1,3 +1,5 @@
 javac -d classes -classpath lib -sourcepath src src/QueryMain.java
 javac -d classes -classpath lib -sourcepath src src/ConvertTxtToTbl.java 
-javac -d classes -classpath lib -sourcepath src src/RandomDB.java
\ No newline at end of file
+javac -d classes -classpath lib -sourcepath src src/RandomDB.java
+javac -d classes -classpath lib -sourcepath src src/BulkLoader.java
+javac -d classes -classpath lib -sourcepath src src/IndexBuilder.java
\ No newline at end of file
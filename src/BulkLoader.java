@@ -0,0 +1,398 @@
+/*
+  parallel loader for large text files, writes the same paged
+  <tablename>.tbl and <tablename>.zone files as ConvertTxtToTbl
+  the text file is split into chunks that end at a line break and the
+  chunks are parsed by several threads straight from the mapped file.
+  every chunk is written to a segment file of its own, and the segments
+  are then copied behind the header page of the table file.
+  <tablename>.stat is rewritten with the exact number of tuples and
+  the exact number of distinct values of every attribute
+  the -columnar and -dict options of ConvertTxtToTbl are not supported
+*/
+
+import qp.utils.Attribute;
+import qp.utils.BTreeIndex;
+import qp.utils.Dictionary;
+import qp.utils.IntHashTable;
+import qp.utils.Schema;
+import qp.utils.TableFile;
+import qp.utils.ZoneMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class BulkLoader {
+
+    static final long MAX_CHUNK = 256L * 1024 * 1024;  // Largest chunk of the text file mapped at once
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("usage: java BulkLoader <tablename> [pagesize] [threads] \n creats <tablename>.tbl and <tablename>.stat files");
+            System.exit(1);
+        }
+        String tblname = args[0];
+        int pagesize = args.length > 1 ? Integer.parseInt(args[1]) : TableFile.DEFAULT_PAGE_SIZE;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Schema schema = null;
+        try (ObjectInputStream ins = new ObjectInputStream(new FileInputStream(tblname + ".md"))) {
+            schema = (Schema) ins.readObject();
+        } catch (ClassNotFoundException ce) {
+            System.out.println("class not found exception --- error in schema object file");
+            System.exit(1);
+        }
+        if (TableFile.Header.size(schema.getNumCols()) > pagesize) {
+            System.out.printf("%s.tbl:page size too small for the table header\n", tblname);
+            System.exit(1);
+        }
+
+        /** Column files, dictionaries and indexes of an earlier load no longer match the table **/
+        for (Attribute attr : schema.getAttList()) {
+            new File(TableFile.columnFileName(attr)).delete();
+            new File(Dictionary.fileName(attr)).delete();
+            new File(BTreeIndex.fileName(attr)).delete();
+        }
+
+        RandomAccessFile txt = new RandomAccessFile(tblname + ".txt", "r");
+        FileChannel channel = txt.getChannel();
+        long[] bounds = split(channel, threads);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<Chunk>> done = new ArrayList<>();
+        for (int i = 0; i < chunks.length; ++i) {
+            chunks[i] = new Chunk(channel, bounds[i], bounds[i + 1], schema, pagesize, tblname + ".tbl." + i);
+            done.add(pool.submit(chunks[i]::load));
+        }
+        for (Future<Chunk> future : done) {
+            future.get();
+        }
+        pool.shutdown();
+        channel.close();
+        txt.close();
+
+        writeTable(tblname, schema, pagesize, chunks);
+        writeStatistics(tblname, schema, chunks);
+    }
+
+    /**
+     * Chunk boundaries: offsets of the text file such that every
+     * * chunk but the last one ends just after a line break
+     **/
+    static long[] split(FileChannel channel, int threads) throws IOException {
+        long size = channel.size();
+        int numChunks = (int) Math.max(threads, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+        ArrayList<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        for (int i = 1; i < numChunks; ++i) {
+            long offset = Math.max(size * i / numChunks, bounds.get(bounds.size() - 1));
+            /** Move forward to the byte after the next line break **/
+            boolean found = false;
+            while (!found && offset < size) {
+                buf.clear();
+                int n = channel.read(buf, offset);
+                for (int j = 0; j < n && !found; ++j) {
+                    offset++;
+                    found = buf.get(j) == '\n';
+                }
+            }
+            if (offset > bounds.get(bounds.size() - 1) && offset < size) {
+                bounds.add(offset);
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the header page followed by the data pages of every segment, in chunk order
+     **/
+    static void writeTable(String tblname, Schema schema, int pagesize, Chunk[] chunks) throws IOException {
+        TableFile.Header header = new TableFile.Header(pagesize, schema.getNumCols());
+        ZoneMap zoneMap = new ZoneMap(schema.getNumCols());
+        for (Chunk chunk : chunks) {
+            header.numPages += chunk.numPages;
+            header.numTuples += chunk.numTuples;
+            zoneMap.append(chunk.zoneMap);
+        }
+        try (RandomAccessFile tbl = new RandomAccessFile(tblname + ".tbl", "rw")) {
+            tbl.setLength(0);
+            FileChannel out = tbl.getChannel();
+            ByteBuffer headerPage = ByteBuffer.allocate(pagesize);
+            header.write(headerPage);
+            headerPage.clear();
+            long offset = 0;
+            while (headerPage.hasRemaining()) {
+                offset += out.write(headerPage, offset);
+            }
+            for (Chunk chunk : chunks) {
+                try (FileChannel in = new FileInputStream(chunk.segment).getChannel()) {
+                    long copied = 0;
+                    while (copied < in.size()) {
+                        copied += in.transferTo(copied, in.size() - copied, out.position(offset + copied));
+                    }
+                    offset += copied;
+                }
+                new File(chunk.segment).delete();
+            }
+        }
+        zoneMap.write(tblname);
+    }
+
+    /**
+     * Writes the number of tuples and the number of distinct values of each attribute
+     **/
+    static void writeStatistics(String tblname, Schema schema, Chunk[] chunks) throws IOException {
+        long numtuples = 0;
+        for (Chunk chunk : chunks) {
+            numtuples += chunk.numTuples;
+        }
+        PrintWriter outstat = new PrintWriter(new BufferedWriter(new FileWriter(tblname + ".stat")));
+        outstat.print(numtuples);
+        outstat.println();
+        for (int i = 0; i < schema.getNumCols(); ++i) {
+            int numdistinct;
+            if (schema.typeOf(i) == Attribute.STRING) {
+                HashSet<String> distinct = chunks[0].strings.get(i);
+                for (int c = 1; c < chunks.length; ++c) {
+                    distinct.addAll(chunks[c].strings.get(i));
+                    chunks[c].strings.set(i, null);
+                }
+                numdistinct = distinct.size();
+            } else {
+                IntHashTable distinct = chunks[0].numbers[i];
+                for (int c = 1; c < chunks.length; ++c) {
+                    chunks[c].numbers[i].forEachKey(distinct::getOrAdd);
+                    chunks[c].numbers[i] = null;
+                }
+                numdistinct = distinct.size();
+            }
+            outstat.print(numdistinct + "\t");
+        }
+        outstat.close();
+    }
+
+    /**
+     * One newline aligned part of the text file, parsed into its own segment of data pages
+     */
+    static class Chunk {
+
+        final FileChannel channel;    // Text file
+        final long start;             // First byte of the chunk in the text file
+        final long end;               // Byte after the last byte of the chunk
+        final Schema schema;
+        final int[] types;            // Type of each attribute
+        final int pagesize;
+        final String segment;         // Segment file the data pages are written to
+
+        int numPages;                 // Pages written to the segment
+        long numTuples;               // Tuples written to the segment
+        ZoneMap zoneMap;              // Bounds of the values of each page of the segment
+        IntHashTable[] numbers;       // Distinct values of each INT, TIME and REAL attribute
+        ArrayList<HashSet<String>> strings;  // Distinct values of each STRING attribute, null for the others
+
+        MappedByteBuffer in;          // The chunk of the text file
+        ByteBuffer page;              // Page currently being filled
+        int numRows;                  // Number of rows in the current page
+        ByteBuffer row;               // Row currently being parsed
+        Object[] values;              // Values of the row currently being parsed
+        FileChannel out;              // Channel of the segment file
+
+        Chunk(FileChannel channel, long start, long end, Schema schema, int pagesize, String segment) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.schema = schema;
+            this.pagesize = pagesize;
+            this.segment = segment;
+            types = new int[schema.getNumCols()];
+            numbers = new IntHashTable[types.length];
+            strings = new ArrayList<>(types.length);
+            for (int i = 0; i < types.length; ++i) {
+                types[i] = schema.typeOf(i);
+                if (types[i] == Attribute.STRING) {
+                    strings.add(new HashSet<>());
+                } else {
+                    strings.add(null);
+                    numbers[i] = new IntHashTable(1024);
+                }
+            }
+            zoneMap = new ZoneMap(types.length);
+        }
+
+        Chunk load() throws IOException {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            page = ByteBuffer.allocate(pagesize);
+            row = ByteBuffer.allocate(pagesize);
+            values = new Object[types.length];
+            try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                file.setLength(0);
+                out = file.getChannel();
+                startPage();
+                int pos = 0;
+                int limit = in.limit();
+                while (pos < limit) {
+                    pos = parseLine(pos, limit);
+                }
+                if (numRows > 0) writePage();
+            }
+            in = null;
+            return this;
+        }
+
+        /**
+         * Parses the line starting at the given position into a row of the
+         * * current page, returns the position of the next line
+         **/
+        int parseLine(int pos, int limit) {
+            row.clear();
+            int col = 0;
+            while (pos < limit && in.get(pos) != '\n') {
+                byte b = in.get(pos);
+                if (b == ' ' || b == '\t' || b == '\r' || b == '\f') {
+                    pos++;
+                    continue;
+                }
+                int tokenEnd = pos;
+                while (tokenEnd < limit && !isDelimiter(in.get(tokenEnd))) {
+                    tokenEnd++;
+                }
+                if (col == types.length) {
+                    error("too many values in line", pos, tokenEnd);
+                }
+                parseValue(col, pos, tokenEnd);
+                col++;
+                pos = tokenEnd;
+            }
+            if (col > 0) {
+                if (col < types.length) {
+                    error("too few values in line", pos, pos);
+                }
+                addRow();
+            }
+            return pos + 1;
+        }
+
+        static boolean isDelimiter(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+        }
+
+        /** Encodes the value held by the bytes [from, to) into the current row **/
+        void parseValue(int col, int from, int to) {
+            int type = types[col];
+            int size = type == Attribute.STRING ? 2 + to - from : 4;
+            if (size > row.remaining() - 4) {
+                error("tuple does not fit in a page", from, to);
+            }
+            if (type == Attribute.INT || type == Attribute.TIME) {
+                int value = parseInt(from, to);
+                row.putInt(value);
+                values[col] = value;
+                numbers[col].getOrAdd(value);
+            } else if (type == Attribute.REAL) {
+                float value = Float.parseFloat(new String(bytes(from, to), StandardCharsets.US_ASCII));
+                row.putFloat(value);
+                values[col] = value;
+                numbers[col].getOrAdd(Float.floatToIntBits(value));
+            } else if (type == Attribute.STRING) {
+                if (to - from > TableFile.MAX_STRING_BYTES) {
+                    error("STRING longer than " + TableFile.MAX_STRING_BYTES + " bytes", from, to);
+                }
+                byte[] bytes = bytes(from, to);
+                row.putShort((short) bytes.length);
+                row.put(bytes);
+                String value = new String(bytes, StandardCharsets.UTF_8);
+                values[col] = value;
+                strings.get(col).add(value);
+            } else {
+                System.err.println("Invalid data type");
+                System.exit(1);
+            }
+        }
+
+        int parseInt(int from, int to) {
+            boolean negative = in.get(from) == '-';
+            int pos = negative || in.get(from) == '+' ? from + 1 : from;
+            if (pos == to) {
+                error("invalid INTEGER", from, to);
+            }
+            long value = 0;
+            for (; pos < to; ++pos) {
+                int digit = in.get(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    error("invalid INTEGER", from, to);
+                }
+                value = value * 10 + digit;
+                if (value > (long) Integer.MAX_VALUE + 1) {
+                    error("invalid INTEGER", from, to);
+                }
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                error("invalid INTEGER", from, to);
+            }
+            return (int) value;
+        }
+
+        byte[] bytes(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            in.get(from, bytes);
+            return bytes;
+        }
+
+        /** Moves the parsed row into the current page, the page is written out first if the row does not fit **/
+        void addRow() {
+            row.flip();
+            if (row.remaining() > page.remaining()) {
+                writePage();
+            }
+            page.put(row);
+            numRows++;
+            numTuples++;
+            for (int i = 0; i < types.length; ++i) {
+                zoneMap.add(numPages, i, values[i]);
+            }
+        }
+
+        void startPage() {
+            page.clear();
+            page.putInt(0);  // numRows, filled in when the page is written
+            numRows = 0;
+        }
+
+        void writePage() {
+            page.putInt(0, numRows);
+            page.position(page.limit());
+            page.flip();
+            try {
+                long offset = (long) numPages * pagesize;
+                while (page.hasRemaining()) {
+                    offset += out.write(page, offset);
+                }
+            } catch (IOException io) {
+                System.out.printf("%s:writing the segment file error\n", segment);
+                System.exit(1);
+            }
+            numPages++;
+            startPage();
+        }
+
+        void error(String message, int from, int to) {
+            System.out.printf("%s at byte %d: %s\n", message, start + from,
+                    new String(bytes(from, Math.min(to, from + 64)), StandardCharsets.UTF_8));
+            System.exit(1);
+        }
+    }
+}
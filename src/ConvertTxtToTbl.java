@@ -3,31 +3,55 @@
   attributes of the relation. each subsequent line represents 1
   tuple of the relation. also assume that the fields of each line
   is delimited by tabs ("\t")
+  the table is written in the paged format of TableFile, with
+  pages of the given size (default TableFile.DEFAULT_PAGE_SIZE)
+  with -columnar every attribute is also written to a column file
+  of its own, so that scans can read only the columns they need
+  with -dict every STRING attribute is dictionary encoded: the file
+  stores integer codes and the dictionary goes to <table>.<column>.dict
+  the bounds of the values of every page are written to <table>.zone
 */
 
 import qp.utils.Attribute;
+import qp.utils.BTreeIndex;
+import qp.utils.Dictionary;
 import qp.utils.Schema;
+import qp.utils.TableFile;
+import qp.utils.TableWriter;
 import qp.utils.Tuple;
+import qp.utils.ZoneMap;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.StringTokenizer;
 
 public class ConvertTxtToTbl {
 
     public static void main(String[] args) throws IOException {
         // check the arguments
-        if (args.length != 1) {
-            System.out.println("usage: java ConvertTxtToTbl <tablename> \n creats <tablename>.tbl files");
+        if (args.length < 1 || args.length > 4) {
+            System.out.println("usage: java ConvertTxtToTbl <tablename> [pagesize] [-columnar] [-dict] \n creats <tablename>.tbl files");
             System.exit(1);
         }
         String tblname = args[0];
+        int pagesize = TableFile.DEFAULT_PAGE_SIZE;
+        boolean columnar = false;
+        boolean dict = false;
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].equals("-columnar")) {
+                columnar = true;
+            } else if (args[i].equals("-dict")) {
+                dict = true;
+            } else {
+                pagesize = Integer.parseInt(args[i]);
+            }
+        }
         String mdfile = tblname + ".md";
         String tblfile = tblname + ".tbl";
 
         /** open the input and output streams **/
         BufferedReader in = new BufferedReader(new FileReader(tblname + ".txt"));
-        ObjectOutputStream outtbl = new ObjectOutputStream(new FileOutputStream(tblfile));
 
         /** First Line is METADATA **/
         int linenum = 0;
@@ -41,37 +65,119 @@ public class ConvertTxtToTbl {
             System.exit(1);
         }
 
+        /** Dictionaries are built by a first pass over the file **/
+        Dictionary[] dictionaries = new Dictionary[schema.getNumCols()];
+        for (int i = 0; i < schema.getNumCols(); ++i) {
+            Attribute attr = schema.getAttribute(i);
+            if (dict && attr.getType() == Attribute.STRING) {
+                dictionaries[i] = buildDictionary(tblname, schema, i);
+                dictionaries[i].write(attr);
+            } else {
+                new File(Dictionary.fileName(attr)).delete();
+            }
+            /** Indexes point at the pages of the earlier load **/
+            new File(BTreeIndex.fileName(attr)).delete();
+        }
+
+        TableWriter outtbl = new TableWriter(tblfile, schema, pagesize);
+        if (!outtbl.open()) {
+            System.exit(1);
+        }
+        setEncodings(outtbl, dictionaries, 0);
+        ZoneMap zoneMap = new ZoneMap(schema.getNumCols());
+        outtbl.setZoneMap(zoneMap);
+        TableWriter[] outcols = new TableWriter[columnar ? schema.getNumCols() : 0];
+        for (int i = 0; i < outcols.length; ++i) {
+            Attribute attr = schema.getAttribute(i);
+            ArrayList<Attribute> column = new ArrayList<>();
+            column.add(attr);
+            outcols[i] = new TableWriter(TableFile.columnFileName(attr), new Schema(column), pagesize);
+            if (!outcols[i].open()) {
+                System.exit(1);
+            }
+            setEncodings(outcols[i], dictionaries, i);
+        }
+        /** Column files left by an earlier columnar conversion would no longer match the table **/
+        if (!columnar) {
+            for (int i = 0; i < schema.getNumCols(); ++i) {
+                new File(TableFile.columnFileName(schema.getAttribute(i))).delete();
+            }
+        }
+
         boolean flag = false;
-        StringTokenizer tokenizer;
         while ((line = in.readLine()) != null) {
             linenum++;
-            tokenizer = new StringTokenizer(line);
-
-            ArrayList<Object> data = new ArrayList<>();
-            int attrIndex = 0;
-
-            while (tokenizer.hasMoreElements()) {
-                String dataElement = tokenizer.nextToken();
-                int datatype = schema.typeOf(attrIndex);
-                if (datatype == Attribute.INT) {
-                    data.add(Integer.valueOf(dataElement));
-                } else if (datatype == Attribute.REAL) {
-                    data.add(Float.valueOf(dataElement));
-                } else if (datatype == Attribute.STRING) {
-                    data.add(dataElement);
-                } else if (datatype == Attribute.TIME) {
-                    data.add(Integer.valueOf(dataElement));
-                } else {
-                    System.err.println("Invalid data type");
-                    System.exit(1);
+            ArrayList<Object> data = parseLine(line, schema);
+            for (int i = 0; i < data.size(); ++i) {
+                if (dictionaries[i] != null) {
+                    data.set(i, dictionaries[i].encode((String) data.get(i)));
                 }
-                attrIndex++;
             }
             Tuple tuple = new Tuple(data);
-            outtbl.writeObject(tuple);
+            if (!outtbl.next(tuple)) {
+                System.exit(1);
+            }
+            for (int i = 0; i < outcols.length; ++i) {
+                ArrayList<Object> value = new ArrayList<>();
+                value.add(data.get(i));
+                outcols[i].next(new Tuple(value));
+            }
         }
         outtbl.close();
+        zoneMap.decode(dictionaries);
+        zoneMap.write(tblname);
+        for (TableWriter outcol : outcols) {
+            outcol.close();
+        }
         in.close();
     }
 
+    /** Splits a line of the text file into the values of the tuple **/
+    static ArrayList<Object> parseLine(String line, Schema schema) {
+        StringTokenizer tokenizer = new StringTokenizer(line);
+        ArrayList<Object> data = new ArrayList<>();
+        int attrIndex = 0;
+
+        while (tokenizer.hasMoreElements()) {
+            String dataElement = tokenizer.nextToken();
+            int datatype = schema.typeOf(attrIndex);
+            if (datatype == Attribute.INT) {
+                data.add(Integer.valueOf(dataElement));
+            } else if (datatype == Attribute.REAL) {
+                data.add(Float.valueOf(dataElement));
+            } else if (datatype == Attribute.STRING) {
+                data.add(dataElement);
+            } else if (datatype == Attribute.TIME) {
+                data.add(Integer.valueOf(dataElement));
+            } else {
+                System.err.println("Invalid data type");
+                System.exit(1);
+            }
+            attrIndex++;
+        }
+        return data;
+    }
+
+    /** Collects the distinct values of the given STRING attribute **/
+    static Dictionary buildDictionary(String tblname, Schema schema, int attrIndex) throws IOException {
+        HashSet<String> distinct = new HashSet<>();
+        BufferedReader in = new BufferedReader(new FileReader(tblname + ".txt"));
+        String line;
+        while ((line = in.readLine()) != null) {
+            ArrayList<Object> data = parseLine(line, schema);
+            distinct.add((String) data.get(attrIndex));
+        }
+        in.close();
+        return Dictionary.build(distinct);
+    }
+
+    /** Marks the dictionary encoded attributes, starting from the given attribute of the table **/
+    static void setEncodings(TableWriter writer, Dictionary[] dictionaries, int firstAttr) {
+        for (int i = 0; i < writer.getHeader().encodings.length; ++i) {
+            if (dictionaries[firstAttr + i] != null) {
+                writer.setEncoding(i, TableFile.DICT);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,84 @@
+/*
+  builds the B+-tree index of one attribute of a paged table file
+  <tablename>.tbl, see BTreeIndex for the layout. the index maps
+  every value of the attribute to the data page and the slot of
+  its tuple and goes to <tablename>.<column>.idx, with pages of
+  the given size (default TableFile.DEFAULT_PAGE_SIZE)
+  the table has to be indexed again whenever it is loaded again
+*/
+
+import qp.utils.Attribute;
+import qp.utils.BTreeIndex;
+import qp.utils.Schema;
+import qp.utils.TableFile;
+import qp.utils.TableReader;
+import qp.utils.Tuple;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class IndexBuilder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("usage: java IndexBuilder <tablename> <column> [pagesize] \n creates <tablename>.<column>.idx files");
+            System.exit(1);
+        }
+        String tblname = args[0];
+        String colname = args[1];
+        int pagesize = args.length == 3 ? Integer.parseInt(args[2]) : TableFile.DEFAULT_PAGE_SIZE;
+        String mdfile = tblname + ".md";
+        String tblfile = tblname + ".tbl";
+
+        Schema schema = null;
+        try {
+            ObjectInputStream ins = new ObjectInputStream(new FileInputStream(mdfile));
+            schema = (Schema) ins.readObject();
+            ins.close();
+        } catch (ClassNotFoundException ce) {
+            System.out.println("class not found exception --- error in schema object file");
+            System.exit(1);
+        }
+        int index = schema.indexOf(new Attribute(tblname, colname));
+        if (index < 0) {
+            System.out.printf("%s has no attribute %s\n", tblname, colname);
+            System.exit(1);
+        }
+        Attribute attr = schema.getAttribute(index);
+        if (!TableFile.isPaged(tblfile)) {
+            System.out.printf("%s:not a paged table file\n", tblfile);
+            System.exit(1);
+        }
+
+        /** Dictionary encoded attributes are indexed by their codes **/
+        TableReader reader = new TableReader(tblfile, schema);
+        boolean[] keepCodes = new boolean[schema.getNumCols()];
+        Arrays.fill(keepCodes, true);
+        reader.setKeepCodes(keepCodes);
+        if (!reader.open()) {
+            System.exit(1);
+        }
+        boolean coded = reader.getHeader().encodings[index] == TableFile.DICT;
+
+        ArrayList<BTreeIndex.Entry> entries = new ArrayList<>();
+        ArrayList<Tuple> page = new ArrayList<>();
+        int pageno = 0;
+        while (reader.nextPage(page)) {
+            for (int slot = 0; slot < page.size(); ++slot) {
+                entries.add(new BTreeIndex.Entry(page.get(slot).dataAt(index), pageno, slot));
+            }
+            page.clear();
+            pageno++;
+        }
+        TableFile.Header header = reader.getHeader();
+        reader.close();
+
+        BTreeIndex tree = BTreeIndex.build(attr, attr.getType(), coded, entries, header, pagesize);
+        if (tree == null) {
+            System.exit(1);
+        }
+        System.out.printf("%s: %d entries, %d keys, %d leaves, height %d\n", tree.getFileName(),
+                tree.getNumEntries(), tree.getNumKeys(), tree.getNumLeaves(), tree.getHeight());
+    }
+}
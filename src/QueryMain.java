@@ -3,8 +3,12 @@
  **/
 
 import qp.operators.Debug;
+import qp.operators.Exchange;
 import qp.operators.Operator;
+import qp.operators.Pipeline;
+import qp.operators.Sort;
 import qp.optimizer.BufferManager;
+import qp.optimizer.ColumnPruner;
 import qp.optimizer.PlanCost;
 import qp.optimizer.RandomOptimizer;
 import qp.parser.Scaner;
@@ -17,10 +21,11 @@ public class QueryMain {
 
     static PrintWriter out;
     static int numAtts;
+    static Dictionary[] dictionaries;  // Dictionaries of the result attributes that may hold codes
 
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("usage: java QueryMain <queryfilename> <resultfile> <pagesize> <numbuffer>");
+            System.out.println("usage: java QueryMain <queryfilename> <resultfile> <pagesize> <numbuffer> [x] [-pool <numframes>] [-prefetch <numpages>] [-codegen] [-dop <numthreads>] [-replsel]");
             System.exit(1);
         }
 
@@ -29,6 +34,7 @@ public class QueryMain {
 
         SQLQuery sqlquery = getSQLQuery(args[0]);
         configureBufferManager(sqlquery, args, in);
+        configureOptions(args);
 
         Operator root = getQueryPlan(sqlquery);
         printFinalPlan(root, args, in);
@@ -109,6 +115,30 @@ public class QueryMain {
         }
     }
 
+    /**
+     * Options following the first five arguments:
+     * * -pool <numframes> sets the number of page frames of the BufferPool
+     * * -prefetch <numpages> sets the number of pages the table readers read ahead, 0 turns it off
+     * * -codegen compiles the selections and projections over the table scans into generated classes
+     * * -dop <numthreads> runs the table scans with their selections and projections on that many threads
+     * * -replsel generates the sorted runs of the external sorts by replacement selection
+     **/
+    private static void configureOptions(String[] args) {
+        for (int i = 5; i < args.length; ++i) {
+            if (args[i].equals("-pool") && i + 1 < args.length) {
+                BufferPool.setNumFrames(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-prefetch") && i + 1 < args.length) {
+                TableReader.setPrefetchDepth(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-codegen")) {
+                Pipeline.setEnabled(true);
+            } else if (args[i].equals("-dop") && i + 1 < args.length) {
+                Exchange.setDegree(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-replsel")) {
+                Sort.setReplacementSelection(true);
+            }
+        }
+    }
+
     /**
      * Run optimiser and get the final query plan as an Operator
      **/
@@ -123,6 +153,11 @@ public class QueryMain {
         }
 
         root = RandomOptimizer.makeExecPlan(planroot);
+        root = ColumnPruner.prune(root);
+        root = Exchange.parallelize(root);
+        if (Pipeline.isEnabled()) {
+            Pipeline.attach(root);
+        }
 
         return root;
     }
@@ -184,13 +219,19 @@ public class QueryMain {
         long endtime = System.currentTimeMillis();
         double executiontime = (endtime - starttime) / 1000.0;
         System.out.println("Execution time = " + executiontime);
+        System.out.printf("Buffer pool: %d hits, %d misses\n", BufferPool.getHits(), BufferPool.getMisses());
+        Debug.PPrintSelectivity(root);
         return executiontime;
     }
 
     protected static void printSchema(Schema schema) {
         String[] aggregates = new String[]{"", "MAX", "MIN", "SUM", "COUNT", "AVG"};
+        dictionaries = new Dictionary[numAtts];
         for (int i = 0; i < numAtts; ++i) {
             Attribute attr = schema.getAttribute(i);
+            if (attr.getType() == Attribute.STRING) {
+                dictionaries[i] = Dictionary.load(attr);
+            }
             int aggregate = attr.getAggType();
             String tabname = attr.getTabName();
             String colname = attr.getColName();
@@ -206,7 +247,9 @@ public class QueryMain {
     protected static void printTuple(Tuple t) {
         for (int i = 0; i < numAtts; ++i) {
             Object data = t.dataAt(i);
-            if (data instanceof Integer) {
+            if (data instanceof Integer && dictionaries[i] != null) {
+                out.print(dictionaries[i].decode((Integer) data) + "\t");
+            } else if (data instanceof Integer) {
                 out.print(((Integer) data).intValue() + "\t");
             } else if (data instanceof Float) {
                 out.print(((Float) data).floatValue() + "\t");
@@ -2,10 +2,13 @@ package qp.operators;
 
 import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.BufferPool;
 import qp.utils.Condition;
 import qp.utils.Tuple;
+import qp.utils.TupleReader;
+import qp.utils.TupleWriter;
 
-import java.io.*;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,17 +17,18 @@ public class BlockNestedJoin extends Join{
 	static int fileNumber = 0;          // To get unique file number for this operation
 	int batchSize;                      // Number of tuples per out batch
 	int tupleSize;                      // Number of byte per tuple
+	int rightBatchSize;                 // Number of tuples per batch of the right table
 	ArrayList<Integer> leftIndex;       // Indices of the join attributes in left table
 	ArrayList<Integer> rightIndex;      // Indices of the join attributes in right table
 	String rightFileName;               // The file name where the right table is materialized
 	Batch outputPage;                   // Buffer page for output
 	Batch leftInputPage;                // Buffer page for left input stream
 	Batch rightInputPage;               // Buffer page for right input stream
-	ObjectInputStream in;               // File pointer to the right hand materialized file
+	TupleReader in;                     // File pointer to the right hand materialized file
 	ArrayList<Tuple> block;             // Structure to simulate the block that containing several pages
 
-	static int leftCursor;              // Cursor for left side block
-	static int rightCursor;             // Cursor for right side buffer
+	int leftCursor;                     // Cursor for left side block
+	int rightCursor;                    // Cursor for right side buffer
 	boolean endOfLeftStream;            // Whether end of stream (left table) is reached
 	boolean endOfRightStream;           // Whether end of stream (right table) is reached
 
@@ -66,6 +70,7 @@ public class BlockNestedJoin extends Join{
 		endOfRightStream = true;
 
 		block = new ArrayList<>();
+		rightInputPage = null;
 
 		int leftTupleSize = left.getSchema().getTupleSize();
 		int rightTupleSize = right.getSchema().getTupleSize();
@@ -77,21 +82,23 @@ public class BlockNestedJoin extends Join{
 
 		// if the right table is not in the hard drive, materialize it
 		Batch materializePage;
+		rightBatchSize = Batch.getPageSize() / rightTupleSize;
 		if (! right.open()) {
 			return false;
 		} else {
 			fileNumber ++;
 			rightFileName = "BNJtemp-" + String.valueOf(fileNumber);
-			try {
-				ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(rightFileName));
-				while ((materializePage = right.next()) != null) {
-					out.writeObject(materializePage);
-				}
-				out.close();
-			} catch (IOException io){
+			TupleWriter out = new TupleWriter(rightFileName, right.getSchema(), rightBatchSize);
+			if (! out.open()) {
 				System.out.println("BlockNestedJoin: Error writing to temporary file");
 				return false;
 			}
+			while ((materializePage = right.next()) != null) {
+				for (int k = 0; k < materializePage.size(); k ++) {
+					out.next(materializePage.get(k));
+				}
+			}
+			out.close();
 			if (! right.close()) {
 				return false;
 			}
@@ -132,74 +139,68 @@ public class BlockNestedJoin extends Join{
 				 */
 				if (block.isEmpty()) {
 					endOfLeftStream = true;
-//					return outputPage;
+					/** the joined tuples found so far are still to be returned **/
+					if (! outputPage.isEmpty()) {
+						return outputPage;
+					}
+					close();
 					return null;
 				}
 
-				// initiate reading the right table for the current block
-				try {
-					in = new ObjectInputStream(new FileInputStream(rightFileName));
-					endOfRightStream = false;
-				} catch (IOException io) {
+				// initiate reading the right table for the current block, its pages are served by the buffer pool
+				in = new TupleReader(rightFileName, right.getSchema(), rightBatchSize);
+				if (! in.open()) {
 					System.err.println("BlockNestedJoin:error in reading the file");
 					System.exit(1);
 				}
+				endOfRightStream = false;
 			}
 
 
 			// still under the progress of comparing the current left with the whole right table
 			while (endOfRightStream == false) {
-				try {
-					if (rightCursor == 0 && leftCursor == 0) {
-						rightInputPage = (Batch) in.readObject();
+				if (rightCursor == 0 && leftCursor == 0) {
+					rightInputPage = in.nextBatch();
+					// the right table is all processed
+					if (rightInputPage == null) {
+						in.close();
+						endOfRightStream = true;
+						break;
 					}
-					/**
-					 * iterate through to find join-able pairs
-					 * the left range of iteration is expanded to block size
-					 */
-					for (i = leftCursor; i < block.size(); i ++) {
-						Tuple leftTuple = block.get(i);
-						for (j = rightCursor; j < rightInputPage.size(); j ++) {
-							Tuple rightTuple = rightInputPage.get(j);
-							if (leftTuple.checkJoin(rightTuple, leftIndex, rightIndex)) {
-								Tuple outTuple = leftTuple.joinWith(rightTuple);
-								outputPage.add(outTuple);
-								/** conditions of left and right cursors when the output buffer page is full **/
-								if (outputPage.isFull()) {
-									if (i == block.size() - 1 && j == rightInputPage.size() - 1) { // both have finished
-										leftCursor = 0;
-										rightCursor = 0;
-									} else if (i != block.size() - 1 && j == rightInputPage.size() - 1) { // right has finished, left has not
-										leftCursor = i + 1;
-										rightCursor = 0;
-									} else if (i == block.size() - 1 && j != rightInputPage.size() - 1) { // the last of left has not finished
-										leftCursor = i;
-										rightCursor = j + 1;
-									} else { // both have not finished
-										leftCursor = i;
-										rightCursor = j + 1;
-									}
-									return outputPage;
+				}
+				/**
+				 * iterate through to find join-able pairs
+				 * the left range of iteration is expanded to block size
+				 */
+				for (i = leftCursor; i < block.size(); i ++) {
+					Tuple leftTuple = block.get(i);
+					for (j = rightCursor; j < rightInputPage.size(); j ++) {
+						Tuple rightTuple = rightInputPage.get(j);
+						if (leftTuple.checkJoin(rightTuple, leftIndex, rightIndex)) {
+							Tuple outTuple = leftTuple.joinWith(rightTuple);
+							outputPage.add(outTuple);
+							/** conditions of left and right cursors when the output buffer page is full **/
+							if (outputPage.isFull()) {
+								if (i == block.size() - 1 && j == rightInputPage.size() - 1) { // both have finished
+									leftCursor = 0;
+									rightCursor = 0;
+								} else if (i != block.size() - 1 && j == rightInputPage.size() - 1) { // right has finished, left has not
+									leftCursor = i + 1;
+									rightCursor = 0;
+								} else if (i == block.size() - 1 && j != rightInputPage.size() - 1) { // the last of left has not finished
+									leftCursor = i;
+									rightCursor = j + 1;
+								} else { // both have not finished
+									leftCursor = i;
+									rightCursor = j + 1;
 								}
+								return outputPage;
 							}
 						}
-						rightCursor = 0;
-					}
-					leftCursor = 0;
-				} catch (EOFException e) { // the right table is all processed
-					try {
-						in.close();
-					} catch (IOException io) {
-						System.out.println("BlockNestedJoin: Error in reading temporary file");
 					}
-					endOfRightStream = true;
-				} catch (IOException e) {
-					System.out.println("BlockNestedJoin: Error in reading temporary file");
-					System.exit(1);
-				} catch (ClassNotFoundException e) {
-					System.out.println("BlockNestedJoin: Error in de-serialising temporary file ");
-					System.exit(1);
+					rightCursor = 0;
 				}
+				leftCursor = 0;
 			}
 		}
 		return outputPage;
@@ -209,6 +210,7 @@ public class BlockNestedJoin extends Join{
 	public boolean close() {
 		File f = new File(rightFileName);
 		f.delete(); // delete the intermediate table
+		BufferPool.invalidate(rightFileName);
 		return true;
 	}
 }
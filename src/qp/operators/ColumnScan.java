@@ -0,0 +1,121 @@
+/**
+ * Scans the required columns of a base table stored in the columnar layout
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.Schema;
+import qp.utils.TableFile;
+import qp.utils.TableReader;
+import qp.utils.Tuple;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * ColumnScan operator - reads only the column files of the attributes
+ * * in its schema and stitches the values back together into tuples
+ */
+public class ColumnScan extends Scan {
+
+    TableReader[] readers;        // One reader per column file
+    ArrayList<ArrayList<Object>> values;   // Values decoded from the current page of each column
+    int[] cursors;                // Next value of the current page of each column
+
+    /**
+     * The schema of the scan only contains the given columns, in table order
+     **/
+    public ColumnScan(String tabname, int type, Schema tableSchema, ArrayList<Attribute> columns) {
+        super(tabname, type);
+        setSchema(tableSchema);
+        setProjection(columns);
+    }
+
+    /**
+     * Whether all the given columns of the table are stored in column files
+     **/
+    public static boolean isApplicable(ArrayList<Attribute> columns) {
+        for (Attribute attr : columns) {
+            String filename = TableFile.columnFileName(attr);
+            if (!new File(filename).exists() || !TableFile.isPaged(filename)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Open one reader per column file
+     **/
+    public boolean open() {
+        int tuplesize = schema.getTupleSize();
+        batchsize = Batch.getPageSize() / tuplesize;
+        eos = false;
+        int numCols = schema.getNumCols();
+        readers = new TableReader[numCols];
+        values = new ArrayList<>(numCols);
+        cursors = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            Attribute attr = schema.getAttribute(i);
+            ArrayList<Attribute> column = new ArrayList<>();
+            column.add(attr);
+            readers[i] = new TableReader(TableFile.columnFileName(attr), new Schema(column));
+            readers[i].setKeepCodes(new boolean[]{encodedColumns.contains(attr)});
+            if (!readers[i].open()) {
+                return false;
+            }
+            values.add(new ArrayList<>());
+        }
+        return true;
+    }
+
+    /**
+     * Builds a batch of tuples, taking the next value of every column for each tuple
+     **/
+    public Batch next() {
+        if (eos) {
+            close();
+            return null;
+        }
+        int numCols = readers.length;
+        Batch tuples = new Batch(batchsize);
+        while (!tuples.isFull()) {
+            ArrayList<Object> data = new ArrayList<>(numCols);
+            for (int i = 0; i < numCols; ++i) {
+                if (cursors[i] == values.get(i).size()) {
+                    values.get(i).clear();
+                    cursors[i] = 0;
+                    if (!readers[i].nextValues(values.get(i))) {
+                        /** All the columns hold the same number of values **/
+                        eos = true;
+                        return tuples;
+                    }
+                }
+                data.add(values.get(i).get(cursors[i]++));
+            }
+            tuples.add(new Tuple(data));
+        }
+        return tuples;
+    }
+
+    public boolean close() {
+        boolean closed = true;
+        if (readers != null) {
+            for (TableReader reader : readers) {
+                if (reader != null) {
+                    closed &= reader.close();
+                }
+            }
+        }
+        return closed;
+    }
+
+    public Object clone() {
+        ColumnScan newscan = new ColumnScan(tabname, optype, (Schema) tableSchema.clone(), schema.getAttList());
+        newscan.setEncodedColumns(encodedColumns);
+        return newscan;
+    }
+
+}
@@ -92,6 +92,9 @@ public class Debug {
                 case JoinType.SORTMERGE:
                     System.out.print("SortMerge(");
                     break;
+                case JoinType.INDEXNESTED:
+                    System.out.print("IndexNested(");
+                    break;
                 case JoinType.HASHJOIN:
                     System.out.print("HashJoin(");
                     break;
@@ -106,8 +109,10 @@ public class Debug {
         } else if (optype == OpType.SELECT) {
             System.out.print("Select(");
             PPrint(((Select) node).getBase());
-            System.out.print("  '");
-            PPrint(((Select) node).getCondition());
+            for (Condition con : ((Select) node).getConditions()) {
+                System.out.print("  '");
+                PPrint(con);
+            }
             System.out.print(")");
 
         } else if (optype == OpType.PROJECT) {
@@ -116,7 +121,22 @@ public class Debug {
             System.out.print(")");
 
         } else if (optype == OpType.SCAN) {
-            System.out.print(((Scan) node).getTabName());
+            Scan scan = (Scan) node;
+            if (scan.getConditions().isEmpty()) {
+                System.out.print(scan.getTabName());
+            } else {
+                System.out.print("Scan(" + scan.getTabName());
+                for (Condition con : scan.getConditions()) {
+                    System.out.print("  '");
+                    PPrint(con);
+                }
+                System.out.print(")");
+            }
+
+        } else if (optype == OpType.INDEXSCAN) {
+            System.out.print("IndexScan(" + ((IndexScan) node).getTabName() + "  '");
+            PPrint(((IndexScan) node).getIndexCondition());
+            System.out.print(")");
 
         } else if (optype == OpType.DISTINCT) {
             System.out.print("Distinct(");
@@ -126,10 +146,46 @@ public class Debug {
             System.out.print("OrderBy(");
             PPrint(((OrderBy) node).getBase());
             System.out.print(")");
+        } else if (optype == OpType.EXCHANGE) {
+            System.out.print("Exchange(");
+            PPrint(((Exchange) node).getBase());
+            System.out.print(")");
         }
     }
 
 
+    /**
+     * print the observed selectivity of the conditions of every Select
+     * * in the plan, in the order the Select checks them in at the end
+     **/
+    public static void PPrintSelectivity(Operator node) {
+        int optype = node.getOpType();
+
+        if (optype == OpType.JOIN) {
+            PPrintSelectivity(((Join) node).getLeft());
+            PPrintSelectivity(((Join) node).getRight());
+        } else if (optype == OpType.SELECT) {
+            Select select = (Select) node;
+            int[] order = select.getEvaluationOrder();
+            if (order != null) {
+                for (int i : order) {
+                    PPrint(select.getConditions().get(i));
+                    System.out.printf(": %d of %d passed (%.4f), %.1f ns per tuple\n", select.getPassed(i),
+                            select.getEvaluated(i), select.getPassRate(i), select.getCostPerRow(i));
+                }
+            }
+            PPrintSelectivity(select.getBase());
+        } else if (optype == OpType.PROJECT) {
+            PPrintSelectivity(((Project) node).getBase());
+        } else if (optype == OpType.DISTINCT) {
+            PPrintSelectivity(((Distinct) node).getBase());
+        } else if (optype == OpType.ORDERBY) {
+            PPrintSelectivity(((OrderBy) node).getBase());
+        } else if (optype == OpType.EXCHANGE) {
+            PPrintSelectivity(((Exchange) node).getBase());
+        }
+    }
+
     /**
      * print a tuple
      **/
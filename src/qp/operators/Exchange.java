@@ -0,0 +1,295 @@
+/**
+ * Runs a Scan -> Select* (-> Project) chain on several threads
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.TableFile;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Morsel driven parallelism: the pages of the scanned table are split into morsels of
+ * MORSEL_PAGES consecutive pages, and every worker runs a copy of the chain whose scan
+ * claims the next unread morsel whenever it is done with one, so that faster workers
+ * simply process more morsels. The workers are tasks of a ForkJoinPool shared by all
+ * the exchanges of the plan, and hand their output batches over to the consumer
+ * through a bounded queue, in no particular order. A chain over a table that is not
+ * in the paged format runs on the consumer thread as it would without an exchange.
+ */
+public class Exchange extends Operator {
+
+    static final int MORSEL_PAGES = 16;   // Number of consecutive pages per morsel
+    static final int QUEUE_BATCHES = 4;   // Number of output batches queued per worker
+
+    static int degree = 1;                // Number of workers per exchange, 1 to run the plan serially
+    static ForkJoinPool pool;             // Threads of the workers, created on first use
+
+    Operator base;              // Top of the chain, copied for every worker
+    ArrayList<Operator> chains; // Copies of the chain run by the workers, until their statistics are merged
+    boolean serial;             // Whether the chain runs on the consumer thread
+    ArrayBlockingQueue<Batch> queue;  // Output batches of the workers
+    final Batch end = new Batch(0);   // Queued by a worker once it is done
+    int running;                // Number of workers that did not queue end yet
+    volatile boolean stopped;   // Set when the consumer no longer wants batches
+    volatile boolean failed;    // Set when a worker could not run its chain
+
+    public Exchange(Operator base) {
+        super(OpType.EXCHANGE);
+        this.base = base;
+    }
+
+    public Operator getBase() {
+        return base;
+    }
+
+    public void setBase(Operator base) {
+        this.base = base;
+    }
+
+    /** Sets the number of workers of the exchanges placed afterwards **/
+    public static void setDegree(int dop) {
+        degree = Math.max(1, dop);
+    }
+
+    public static int getDegree() {
+        return degree;
+    }
+
+    /** Pool running the parallel tasks, with one thread per degree of parallelism **/
+    public static synchronized ForkJoinPool getPool() {
+        if (pool == null || pool.getParallelism() != degree) {
+            pool = new ForkJoinPool(degree);
+        }
+        return pool;
+    }
+
+    /**
+     * Places an exchange over every Scan -> Select* (-> Project) chain of the
+     * * execution plan when the degree of parallelism is above 1, returns the root
+     **/
+    public static Operator parallelize(Operator node) {
+        if (degree <= 1) {
+            return node;
+        }
+        if (isChain(node)) {
+            Exchange exchange = new Exchange(node);
+            exchange.setSchema(node.getSchema());
+            return exchange;
+        }
+        if (node.getOpType() == OpType.PROJECT) {
+            ((Project) node).setBase(parallelize(((Project) node).getBase()));
+        } else if (node.getOpType() == OpType.SELECT) {
+            ((Select) node).setBase(parallelize(((Select) node).getBase()));
+        } else if (node.getOpType() == OpType.JOIN) {
+            ((Join) node).setLeft(parallelize(((Join) node).getLeft()));
+            /** The inner table of an index nested join is probed through its Scan **/
+            if (!(node instanceof IndexNestedJoin)) {
+                ((Join) node).setRight(parallelize(((Join) node).getRight()));
+            }
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            ((Distinct) node).setBase(parallelize(((Distinct) node).getBase()));
+        } else if (node.getOpType() == OpType.ORDERBY) {
+            ((OrderBy) node).setBase(parallelize(((OrderBy) node).getBase()));
+        }
+        return node;
+    }
+
+    /**
+     * Whether the node tops a chain whose copies can each process a part of the table,
+     * * which rules out aggregates and scans of the columnar layout
+     **/
+    static boolean isChain(Operator node) {
+        if (node.getOpType() == OpType.PROJECT) {
+            for (Attribute attr : ((Project) node).getProjAttr()) {
+                if (attr.getAggType() != Attribute.NONE) {
+                    return false;
+                }
+            }
+            node = ((Project) node).getBase();
+        }
+        while (node.getOpType() == OpType.SELECT) {
+            node = ((Select) node).getBase();
+        }
+        return node.getOpType() == OpType.SCAN && !(node instanceof ColumnScan);
+    }
+
+    /**
+     * Scan at the bottom of the given chain
+     **/
+    static Scan scanOf(Operator node) {
+        if (node.getOpType() == OpType.PROJECT) {
+            node = ((Project) node).getBase();
+        }
+        while (node.getOpType() == OpType.SELECT) {
+            node = ((Select) node).getBase();
+        }
+        return (Scan) node;
+    }
+
+    /**
+     * Starts the workers on their copies of the chain
+     **/
+    public boolean open() {
+        serial = degree <= 1 || !TableFile.isPaged(scanOf(base).getTabName() + ".tbl");
+        if (serial) {
+            return base.open();
+        }
+        AtomicInteger morsels = new AtomicInteger();
+        queue = new ArrayBlockingQueue<>(QUEUE_BATCHES * degree);
+        stopped = false;
+        failed = false;
+        running = degree;
+        chains = new ArrayList<>();
+        ForkJoinPool workers = getPool();
+        for (int i = 0; i < degree; ++i) {
+            Operator chain = (Operator) base.clone();
+            chains.add(chain);
+            scanOf(chain).setMorsels(morsels, MORSEL_PAGES);
+            if (Pipeline.isEnabled()) {
+                Pipeline.attach(chain);
+            }
+            workers.execute(() -> run(chain));
+        }
+        return true;
+    }
+
+    /**
+     * Body of a worker: runs its chain until the morsels run out
+     **/
+    void run(Operator chain) {
+        try {
+            if (!chain.open()) {
+                failed = true;
+            } else {
+                Batch batch;
+                while (!stopped && (batch = chain.next()) != null) {
+                    if (!batch.isEmpty()) {
+                        put(batch);
+                    }
+                }
+                chain.close();
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Exchange: worker failed " + e);
+            failed = true;
+        } finally {
+            put(end);
+        }
+    }
+
+    /**
+     * Queues a batch, letting the pool add a thread while the worker waits for room.
+     * * Batches are dropped once the consumer stopped, the end marker never is
+     **/
+    void put(Batch batch) {
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                public boolean block() throws InterruptedException {
+                    return queue.offer(batch, 10, TimeUnit.MILLISECONDS) || (stopped && batch != end);
+                }
+
+                public boolean isReleasable() {
+                    return queue.offer(batch) || (stopped && batch != end);
+                }
+            });
+        } catch (InterruptedException e) {
+            System.out.println("Exchange: interrupted while queueing a batch");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Next output batch of any of the workers, null once all of them are done
+     **/
+    public Batch next() {
+        if (serial) {
+            return base.next();
+        }
+        while (running > 0) {
+            Batch batch = null;
+            try {
+                batch = queue.take();
+            } catch (InterruptedException e) {
+                System.out.println("Exchange: interrupted while waiting for a batch");
+                System.exit(1);
+            }
+            if (batch == end) {
+                running--;
+                continue;
+            }
+            return batch;
+        }
+        if (failed) {
+            System.out.println("Exchange: error in the parallel execution");
+            System.exit(1);
+        }
+        mergeStatistics();
+        return null;
+    }
+
+    /**
+     * Stops the workers and waits for all of them to be done
+     **/
+    public boolean close() {
+        if (serial) {
+            return base.close();
+        }
+        stopped = true;
+        while (running > 0) {
+            Batch batch = null;
+            try {
+                batch = queue.poll(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                System.out.println("Exchange: interrupted while closing");
+                System.exit(1);
+            }
+            if (batch == end) {
+                running--;
+            }
+        }
+        mergeStatistics();
+        return true;
+    }
+
+    /**
+     * Adds the condition statistics of the Selects of the copies run by the
+     * * workers to the Selects of the chain, once all the workers are done
+     **/
+    void mergeStatistics() {
+        if (chains == null) {
+            return;
+        }
+        for (Operator chain : chains) {
+            Operator into = base;
+            Operator from = chain;
+            while (into.getOpType() == from.getOpType()) {
+                if (into.getOpType() == OpType.PROJECT) {
+                    into = ((Project) into).getBase();
+                    from = ((Project) from).getBase();
+                } else if (into.getOpType() == OpType.SELECT) {
+                    ((Select) into).addStatistics((Select) from);
+                    into = ((Select) into).getBase();
+                    from = ((Select) from).getBase();
+                } else {
+                    break;
+                }
+            }
+        }
+        chains = null;
+    }
+
+    public Object clone() {
+        Operator newbase = (Operator) base.clone();
+        Exchange newexchange = new Exchange(newbase);
+        newexchange.setSchema(newbase.getSchema());
+        return newexchange;
+    }
+
+}
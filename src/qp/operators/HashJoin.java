@@ -0,0 +1,514 @@
+/**
+ * Hybrid Hash Join algorithm
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.BufferPool;
+import qp.utils.Condition;
+import qp.utils.IntHashTable;
+import qp.utils.Schema;
+import qp.utils.Tuple;
+import qp.utils.TupleReader;
+import qp.utils.TupleWriter;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.Supplier;
+
+/**
+ * The left input is the build side. As long as it fits into numBuff - 2 pages it is
+ * kept in an in-memory hash table and the right input is streamed against it. Otherwise
+ * both inputs are partitioned on a hash of their join attributes: partition 0 stays
+ * resident in the hash table and is probed while the right input is partitioned, only
+ * the other partitions are written to spill files (partition 0 too if it outgrows its
+ * pages). The spilled partitions are then joined pair by pair, building on the smaller
+ * side, and a pair whose smaller side does not fit is partitioned again into numBuff - 1
+ * partitions with another hash function, up to MAXLEVEL times (only duplicates of one
+ * key can keep it too large). With a single INT or TIME join attribute on both sides the
+ * hash table is keyed on the value of the attribute itself, so the build tuples found for a
+ * probe tuple all match it; otherwise it is keyed on a hash of the join attributes and every
+ * build tuple found is checked against the probe tuple.
+ */
+public class HashJoin extends Join {
+
+    static int filenum = 0;                // To get unique filenum for this operation
+    public static final int MAXLEVEL = 4;  // Partitioning passes after which a partition is built however large
+
+    /**
+     * Pair of spill files holding the left and right tuples of one partition
+     **/
+    static class Partition {
+        String leftfile;
+        String rightfile;
+        long lefttuples;            // Number of left tuples in the partition
+        long righttuples;           // Number of right tuples in the partition
+        int level;                  // Number of partitioning passes that produced it
+    }
+
+    int batchsize;                  // Number of tuples per out batch
+    int leftbatchsize;              // Number of tuples per page of the left input
+    int rightbatchsize;             // Number of tuples per page of the right input
+    ArrayList<Integer> leftindex;   // Indices of the join attributes in left table
+    ArrayList<Integer> rightindex;  // Indices of the join attributes in right table
+    ArrayDeque<Partition> pending;  // Spilled partitions still to be joined
+
+    Partition[] firstpass;          // Partitions of the inputs, null if the left input fits in memory
+    TupleWriter[] leftout;          // Spill files of the left side of the partitions
+    TupleWriter[] rightout;         // Spill files of the right side of the partitions
+    boolean streaming;              // Whether the right input is streamed against the left tuples in memory
+
+    Partition current;              // Spilled partition being joined
+    boolean buildleft;              // Whether the left tuples of the partition are in the hash table
+    boolean intkey;                 // Whether the join is on a single INT or TIME attribute, used as the key
+    IntHashTable table;             // Ids of the build tuples by their key (see key)
+    ArrayList<Tuple> buildrows;     // Build tuples in the hash table, by id
+    TupleReader probein;            // Probe tuples of the spilled partition
+    Batch outbatch;                 // Buffer page for output
+    Batch probebatch;               // Buffer page for the probe tuples
+    Tuple probetuple;               // Probe tuple being joined
+    int match;                      // Id of the next build tuple with the same key as the probe tuple
+
+    int pcurs;                      // Cursor for the probe buffer
+    boolean eos;                    // Whether all the partitions are joined
+
+    public HashJoin(Join jn) {
+        super(jn.getLeft(), jn.getRight(), jn.getConditionList(), jn.getOpType());
+        schema = jn.getSchema();
+        jointype = jn.getJoinType();
+        numBuff = jn.getNumBuff();
+    }
+
+    /**
+     * Number of partitions of the inputs when the left input does not fit in memory:
+     * * half of the pages left for the hash table hold the pages of the spilled partitions
+     **/
+    public static int getFirstPartitions(long numbuff) {
+        return (int) Math.max(1, (numbuff - 2) / 2) + 1;
+    }
+
+    /**
+     * Pages of the hash table of the resident partition 0
+     **/
+    public static long getResidentPages(long numbuff) {
+        return Math.max(1, numbuff - 2 - (getFirstPartitions(numbuff) - 1));
+    }
+
+    /**
+     * Finds the index of the join attributes, builds the hash table
+     * * of the left input and partitions it if it does not fit
+     **/
+    public boolean open() {
+        int tuplesize = schema.getTupleSize();
+        int lefttuplesize = left.getSchema().getTupleSize();
+        int righttuplesize = right.getSchema().getTupleSize();
+        if (tuplesize > Batch.getPageSize() || lefttuplesize > Batch.getPageSize() || righttuplesize > Batch.getPageSize()) {
+            System.out.println("Page size too small.");
+            return false;
+        }
+        batchsize = Batch.getPageSize() / tuplesize;
+        leftbatchsize = Batch.getPageSize() / lefttuplesize;
+        rightbatchsize = Batch.getPageSize() / righttuplesize;
+
+        leftindex = new ArrayList<>();
+        rightindex = new ArrayList<>();
+        for (Condition con : conditionList) {
+            Attribute leftattr = con.getLhs();
+            Attribute rightattr = (Attribute) con.getRhs();
+            leftindex.add(left.getSchema().indexOf(leftattr));
+            rightindex.add(right.getSchema().indexOf(rightattr));
+        }
+        intkey = conditionList.size() == 1
+                && isIntType(left.getSchema().typeOf(leftindex.get(0)))
+                && isIntType(right.getSchema().typeOf(rightindex.get(0)));
+
+        pending = new ArrayDeque<>();
+        firstpass = null;
+        newTable();
+        long memtuples = Math.max(1, numBuff - 2) * (long) leftbatchsize;
+        if (!left.open()) {
+            return false;
+        }
+        Batch inbatch;
+        while ((inbatch = left.next()) != null) {
+            for (int j = 0; j < inbatch.size(); ++j) {
+                Tuple tuple = inbatch.get(j);
+                if (firstpass != null) {
+                    buildTuple(tuple);
+                } else {
+                    addToTable(tuple, leftindex);
+                    if (buildrows.size() > memtuples && !startPartitioning()) {
+                        return false;
+                    }
+                }
+            }
+        }
+        left.close();
+
+        if (firstpass != null) {
+            closeWriters(leftout, firstpass, true);
+            rightout = openWriters(firstpass, false);
+            if (rightout == null) {
+                return false;
+            }
+        }
+        current = null;
+        probein = null;
+        probebatch = null;
+        match = IntHashTable.NONE;
+        buildleft = true;
+        streaming = true;
+        eos = false;
+        return right.open();
+    }
+
+    protected void newTable() {
+        table = new IntHashTable();
+        buildrows = new ArrayList<>();
+    }
+
+    protected void addToTable(Tuple tuple, ArrayList<Integer> index) {
+        table.put(key(tuple, index), buildrows.size());
+        buildrows.add(tuple);
+    }
+
+    /**
+     * Partitions the left tuples read so far when they no longer fit in memory
+     **/
+    protected boolean startPartitioning() {
+        firstpass = newPartitions(0, getFirstPartitions(numBuff));
+        leftout = openWriters(firstpass, true);
+        if (leftout == null) {
+            return false;
+        }
+        ArrayList<Tuple> inrows = buildrows;
+        newTable();
+        for (Tuple tuple : inrows) {
+            buildTuple(tuple);
+        }
+        return true;
+    }
+
+    /**
+     * Keeps a left tuple of partition 0 in the hash table while it fits, spills the others
+     **/
+    protected void buildTuple(Tuple tuple) {
+        int part = Math.floorMod(mix(hash(tuple, leftindex), 0), firstpass.length);
+        if (part != 0 || table == null) {
+            leftout[part].next(tuple);
+            return;
+        }
+        addToTable(tuple, leftindex);
+        if (buildrows.size() > getResidentPages(numBuff) * leftbatchsize) {
+            /** Partition 0 is spilled like the others **/
+            for (Tuple intuple : buildrows) {
+                leftout[0].next(intuple);
+            }
+            table = null;
+            buildrows = null;
+        }
+    }
+
+    /**
+     * Spill files of the partitions of the given partitioning pass
+     **/
+    protected Partition[] newPartitions(int level, int count) {
+        Partition[] parts = new Partition[count];
+        for (int i = 0; i < count; ++i) {
+            parts[i] = new Partition();
+            parts[i].level = level;
+            filenum++;
+            parts[i].leftfile = "HJtemp-" + filenum + "-l";
+            parts[i].rightfile = "HJtemp-" + filenum + "-r";
+        }
+        return parts;
+    }
+
+    /**
+     * Opens the files of one side of the partitions, null if one cannot be written
+     **/
+    protected TupleWriter[] openWriters(Partition[] parts, boolean leftside) {
+        Schema schm = leftside ? left.getSchema() : right.getSchema();
+        TupleWriter[] out = new TupleWriter[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            String file = leftside ? parts[i].leftfile : parts[i].rightfile;
+            out[i] = new TupleWriter(file, schm, leftside ? leftbatchsize : rightbatchsize);
+            if (!out[i].open()) {
+                System.out.println("HashJoin: Error writing to temporary file");
+                return null;
+            }
+        }
+        return out;
+    }
+
+    protected void closeWriters(TupleWriter[] out, Partition[] parts, boolean leftside) {
+        for (int i = 0; i < parts.length; ++i) {
+            out[i].close();
+            if (leftside) {
+                parts[i].lefttuples = out[i].getNumTuple();
+            } else {
+                parts[i].righttuples = out[i].getNumTuple();
+            }
+        }
+    }
+
+    /**
+     * Writes the tuples of one input into the files of its side of the partitions
+     **/
+    protected boolean partition(Supplier<Batch> input, boolean leftside, Partition[] parts) {
+        ArrayList<Integer> index = leftside ? leftindex : rightindex;
+        int level = parts[0].level;
+        TupleWriter[] out = openWriters(parts, leftside);
+        if (out == null) {
+            return false;
+        }
+        Batch inbatch;
+        while ((inbatch = input.get()) != null) {
+            for (int j = 0; j < inbatch.size(); ++j) {
+                Tuple tuple = inbatch.get(j);
+                out[Math.floorMod(mix(hash(tuple, index), level), parts.length)].next(tuple);
+            }
+        }
+        closeWriters(out, parts, leftside);
+        return true;
+    }
+
+    static boolean isIntType(int type) {
+        return type == Attribute.INT || type == Attribute.TIME;
+    }
+
+    /**
+     * Key of a tuple in the hash table, the value of its join attribute
+     * * when intkey, the hash of its join attributes otherwise
+     **/
+    protected long key(Tuple tuple, ArrayList<Integer> index) {
+        return intkey ? (Integer) tuple.dataAt(index.get(0)) : hash(tuple, index);
+    }
+
+    /**
+     * Hash of the join attributes of a tuple, the same for both sides when they match
+     **/
+    static int hash(Tuple tuple, ArrayList<Integer> index) {
+        int h = 1;
+        for (int i : index) {
+            h = 31 * h + tuple.dataAt(i).hashCode();
+        }
+        return h;
+    }
+
+    /**
+     * Scrambles a hash differently for every partitioning pass, so that
+     * * the tuples of one partition are spread again by the next pass
+     **/
+    static int mix(int h, int level) {
+        h ^= (level + 1) * 0x9E3779B9;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+
+    /**
+     * Joins the right input with the left tuples in memory,
+     * * then the spilled partitions pair by pair
+     **/
+    public Batch next() {
+        if (eos) {
+            close();
+            return null;
+        }
+        outbatch = new Batch(batchsize);
+        while (!outbatch.isFull()) {
+            if (match != IntHashTable.NONE) {
+                Tuple buildtuple = buildrows.get(match);
+                match = table.next(match);
+                Tuple lefttuple = buildleft ? buildtuple : probetuple;
+                Tuple righttuple = buildleft ? probetuple : buildtuple;
+                if (intkey || lefttuple.checkJoin(righttuple, leftindex, rightindex)) {
+                    outbatch.add(lefttuple.joinWith(righttuple));
+                }
+                continue;
+            }
+            if (probebatch != null && pcurs < probebatch.size()) {
+                probetuple = probebatch.get(pcurs++);
+                ArrayList<Integer> probeindex = buildleft ? rightindex : leftindex;
+                if (streaming && firstpass != null) {
+                    /** Only the tuples of the resident partition are joined right away **/
+                    int part = Math.floorMod(mix(hash(probetuple, probeindex), 0), firstpass.length);
+                    if (part != 0 || table == null) {
+                        rightout[part].next(probetuple);
+                        continue;
+                    }
+                }
+                match = table.first(key(probetuple, probeindex));
+                continue;
+            }
+            if (streaming) {
+                probebatch = right.next();
+                pcurs = 0;
+                if (probebatch != null) {
+                    continue;
+                }
+                finishStreaming();
+            } else if (probein != null) {
+                probebatch = probein.nextBatch();
+                pcurs = 0;
+                if (probebatch != null) {
+                    continue;
+                }
+                finishPartition();
+            }
+            if (!nextPartition()) {
+                eos = true;
+                return outbatch;
+            }
+        }
+        return outbatch;
+    }
+
+    /**
+     * Queues the spilled partitions once the right input is read
+     **/
+    protected void finishStreaming() {
+        streaming = false;
+        right.close();
+        probebatch = null;
+        match = IntHashTable.NONE;
+        table = null;
+        buildrows = null;
+        if (firstpass != null) {
+            closeWriters(rightout, firstpass, false);
+            for (Partition p : firstpass) {
+                pending.addLast(p);
+            }
+            firstpass = null;
+        }
+    }
+
+    /**
+     * Builds the hash table of the next partition whose smaller side fits in memory,
+     * * partitioning again those which do not. Returns false when none is left
+     **/
+    protected boolean nextPartition() {
+        while (!pending.isEmpty()) {
+            Partition p = pending.pollFirst();
+            if (p.lefttuples == 0 || p.righttuples == 0) {
+                deleteFiles(p);
+                continue;
+            }
+            long leftpages = (p.lefttuples + leftbatchsize - 1) / leftbatchsize;
+            long rightpages = (p.righttuples + rightbatchsize - 1) / rightbatchsize;
+            boolean smallleft = leftpages <= rightpages;
+            if (Math.min(leftpages, rightpages) > Math.max(1, numBuff - 2) && p.level < MAXLEVEL) {
+                if (!repartition(p)) {
+                    System.out.println("HashJoin: error in partitioning the temporary files");
+                    System.exit(1);
+                }
+                continue;
+            }
+
+            current = p;
+            buildleft = smallleft;
+            newTable();
+            TupleReader buildin = buildleft
+                    ? new TupleReader(p.leftfile, left.getSchema(), leftbatchsize)
+                    : new TupleReader(p.rightfile, right.getSchema(), rightbatchsize);
+            probein = buildleft
+                    ? new TupleReader(p.rightfile, right.getSchema(), rightbatchsize)
+                    : new TupleReader(p.leftfile, left.getSchema(), leftbatchsize);
+            if (!buildin.open() || !probein.open()) {
+                System.out.println("HashJoin: error in reading the temporary files");
+                System.exit(1);
+            }
+            ArrayList<Integer> buildindex = buildleft ? leftindex : rightindex;
+            Batch buildbatch;
+            while ((buildbatch = buildin.nextBatch()) != null) {
+                for (int j = 0; j < buildbatch.size(); ++j) {
+                    addToTable(buildbatch.get(j), buildindex);
+                }
+            }
+            buildin.close();
+            probebatch = null;
+            match = IntHashTable.NONE;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Splits both sides of a partition with the hash function of the next level,
+     * * the new partitions are joined before the other pending ones
+     **/
+    protected boolean repartition(Partition p) {
+        Partition[] parts = newPartitions(p.level + 1, Math.max(2, numBuff - 1));
+        TupleReader leftin = new TupleReader(p.leftfile, left.getSchema(), leftbatchsize);
+        TupleReader rightin = new TupleReader(p.rightfile, right.getSchema(), rightbatchsize);
+        if (!leftin.open() || !partition(leftin::nextBatch, true, parts)) {
+            return false;
+        }
+        leftin.close();
+        if (!rightin.open() || !partition(rightin::nextBatch, false, parts)) {
+            return false;
+        }
+        rightin.close();
+        deleteFiles(p);
+        for (int i = parts.length - 1; i >= 0; --i) {
+            pending.addFirst(parts[i]);
+        }
+        return true;
+    }
+
+    protected void finishPartition() {
+        probein.close();
+        probein = null;
+        probebatch = null;
+        match = IntHashTable.NONE;
+        table = null;
+        buildrows = null;
+        deleteFiles(current);
+        current = null;
+    }
+
+    static void deleteFiles(Partition p) {
+        new File(p.leftfile).delete();
+        new File(p.rightfile).delete();
+        BufferPool.invalidate(p.leftfile);
+        BufferPool.invalidate(p.rightfile);
+    }
+
+    /**
+     * Close the operator, deleting the spill files not joined yet
+     */
+    public boolean close() {
+        if (streaming) {
+            streaming = false;
+            right.close();
+            if (firstpass != null) {
+                closeWriters(rightout, firstpass, false);
+                for (Partition p : firstpass) {
+                    deleteFiles(p);
+                }
+                firstpass = null;
+            }
+        }
+        if (probein != null) {
+            probein.close();
+            probein = null;
+        }
+        if (current != null) {
+            deleteFiles(current);
+            current = null;
+        }
+        if (pending != null) {
+            for (Partition p : pending) {
+                deleteFiles(p);
+            }
+            pending.clear();
+        }
+        table = null;
+        buildrows = null;
+        return true;
+    }
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Index Nested Loop Join algorithm
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.BTreeIndex;
+import qp.utils.Batch;
+import qp.utils.Condition;
+import qp.utils.Tuple;
+
+import java.util.ArrayList;
+
+/**
+ * The right (inner) input has to be a base table, possibly under selections, with a
+ * BTreeIndex on its attribute of one of the join conditions (built with IndexBuilder).
+ * The left input is streamed and, for every tuple, the matching tuples of the inner table
+ * are looked up in the index: the scan of the inner table is replaced by an IndexScan
+ * probed with the join value, and the selections above it are applied to the matches.
+ */
+public class IndexNestedJoin extends Join {
+
+    int batchsize;                  // Number of tuples per out batch
+    ArrayList<Integer> leftindex;   // Indices of the join attributes in left table
+    ArrayList<Integer> rightindex;  // Indices of the join attributes in right table
+    int probeindex;                 // Index of the attribute of the left table looked up
+    IndexScan probe;                // Scan of the inner table through the index
+    Batch outbatch;                 // Buffer page for output
+    Batch leftbatch;                // Buffer page for left input stream
+    Batch rightbatch;               // Matches of the current left tuple
+    Tuple lefttuple;                // Left tuple being joined
+
+    int lcurs;                      // Cursor for left side buffer
+    int rcurs;                      // Cursor for right side buffer
+    boolean eosl;                   // Whether end of stream (left table) is reached
+    boolean eosr;                   // Whether all the matches of the left tuple are joined
+
+    public IndexNestedJoin(Join jn) {
+        super(jn.getLeft(), jn.getRight(), jn.getConditionList(), jn.getOpType());
+        schema = jn.getSchema();
+        jointype = jn.getJoinType();
+        numBuff = jn.getNumBuff();
+    }
+
+    /**
+     * Base table scanned by the given inner input of a join, null if it is not a base table
+     **/
+    static Scan getInnerScan(Operator right) {
+        while (right.getOpType() == OpType.SELECT) {
+            right = ((Select) right).getBase();
+        }
+        if (right.getOpType() == OpType.SCAN || right.getOpType() == OpType.INDEXSCAN) {
+            return (Scan) right;
+        }
+        return null;
+    }
+
+    /**
+     * Join condition whose attribute of the inner table is indexed,
+     * * null if the join cannot be performed as an index nested loop join
+     **/
+    public static Condition getProbeCondition(Join jn) {
+        Scan scan = getInnerScan(jn.getRight());
+        if (scan == null) {
+            return null;
+        }
+        for (Condition con : jn.getConditionList()) {
+            Attribute rightattr = (Attribute) con.getRhs();
+            if (rightattr.getTabName().equals(scan.getTabName()) && BTreeIndex.load(rightattr) != null) {
+                return con;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the index of the join attributes and puts
+     * * the probed index scan in place of the inner scan
+     **/
+    public boolean open() {
+        int tuplesize = schema.getTupleSize();
+        batchsize = Batch.getPageSize() / tuplesize;
+
+        leftindex = new ArrayList<>();
+        rightindex = new ArrayList<>();
+        for (Condition con : conditionList) {
+            Attribute leftattr = con.getLhs();
+            Attribute rightattr = (Attribute) con.getRhs();
+            leftindex.add(left.getSchema().indexOf(leftattr));
+            rightindex.add(right.getSchema().indexOf(rightattr));
+        }
+
+        Condition probecon = getProbeCondition(this);
+        if (probecon == null) {
+            System.out.println("IndexNestedJoin: no index on the inner table");
+            return false;
+        }
+        probeindex = left.getSchema().indexOf(probecon.getLhs());
+        Scan scan = getInnerScan(right);
+        probe = new IndexScan(scan.getTabName(), (Attribute) probecon.getRhs());
+        probe.setSchema(scan.getSchema());
+        probe.setEncodedColumns(scan.getEncodedColumns());
+        Operator inner = probe;
+        if (!scan.getConditions().isEmpty()) {
+            /** The conditions pushed into the inner scan are checked on the probed tuples **/
+            inner = new Select(probe, scan.getConditions(), OpType.SELECT);
+            inner.setSchema(probe.getSchema());
+        }
+        if (right == scan) {
+            right = inner;
+        } else {
+            Operator node = right;
+            while (((Select) node).getBase() != scan) {
+                node = ((Select) node).getBase();
+            }
+            ((Select) node).setBase(inner);
+        }
+
+        leftbatch = null;
+        lcurs = 0;
+        eosl = false;
+        eosr = true;
+        return left.open();
+    }
+
+    /**
+     * Joins the tuples of the left input one after the other with their matches
+     **/
+    public Batch next() {
+        if (eosl) {
+            close();
+            return null;
+        }
+        outbatch = new Batch(batchsize);
+        while (!outbatch.isFull()) {
+            if (eosr) {
+                /** Looks up the matches of the next left tuple **/
+                if (leftbatch == null || lcurs == leftbatch.size()) {
+                    leftbatch = left.next();
+                    lcurs = 0;
+                    if (leftbatch == null) {
+                        eosl = true;
+                        return outbatch;
+                    }
+                    continue;
+                }
+                lefttuple = leftbatch.get(lcurs++);
+                probe.setProbeKey(lefttuple.dataAt(probeindex));
+                if (!right.open()) {
+                    System.out.println("IndexNestedJoin: error in probing the inner table");
+                    System.exit(1);
+                }
+                rightbatch = null;
+                rcurs = 0;
+                eosr = false;
+            }
+            if (rightbatch == null || rcurs == rightbatch.size()) {
+                rightbatch = right.next();
+                rcurs = 0;
+                if (rightbatch == null) {
+                    eosr = true;
+                }
+                continue;
+            }
+            Tuple righttuple = rightbatch.get(rcurs++);
+            if (lefttuple.checkJoin(righttuple, leftindex, rightindex)) {
+                outbatch.add(lefttuple.joinWith(righttuple));
+            }
+        }
+        return outbatch;
+    }
+
+    /**
+     * Close the operator
+     */
+    public boolean close() {
+        left.close();
+        if (probe != null) {
+            probe.closeProbe();
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,192 @@
+/**
+ * Scans the tuples of a base table that satisfy a selection condition through a BTreeIndex
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.BTreeIndex;
+import qp.utils.Batch;
+import qp.utils.ColumnBatch;
+import qp.utils.Condition;
+import qp.utils.Schema;
+import qp.utils.Tuple;
+
+import java.util.ArrayList;
+
+/**
+ * IndexScan - looks up the locations of the qualifying tuples in the index on the
+ * * attribute of the condition and reads only the data pages holding them, each page
+ * * once, in page order. The condition is still checked by the Select above. Without
+ * * a usable index (e.g. the table was loaded again after the index was built) the
+ * * whole table is scanned instead
+ */
+public class IndexScan extends Scan {
+
+    Condition indexCondition;  // Selection condition answered through the index
+    Attribute probeAttr;       // Join attribute looked up by an IndexNestedJoin instead, null if none
+    Object probeKey;           // Value looked up by the current probe
+
+    BTreeIndex index;          // Index used, null to scan the whole table
+    long[] rids;               // Locations of the qualifying tuples in page order, null to scan the table
+    int ridCursor;             // Next location to be read
+
+    public IndexScan(String tabname, Condition indexCondition) {
+        super(tabname, OpType.INDEXSCAN);
+        this.indexCondition = indexCondition;
+    }
+
+    /**
+     * Index scan probed by an IndexNestedJoin, which sets the key to look up
+     * * and opens the scan again for every tuple of its outer input
+     **/
+    public IndexScan(String tabname, Attribute probeAttr) {
+        super(tabname, OpType.INDEXSCAN);
+        this.probeAttr = probeAttr;
+    }
+
+    public Condition getIndexCondition() {
+        return indexCondition;
+    }
+
+    public void setProbeKey(Object key) {
+        this.probeKey = key;
+    }
+
+    /**
+     * Conditions among the given selection conditions which can be answered through an index
+     **/
+    public static ArrayList<Condition> getIndexConditions(ArrayList<Condition> conditions) {
+        ArrayList<Condition> usable = new ArrayList<>();
+        for (Condition con : conditions) {
+            if (BTreeIndex.canSearch(con) && BTreeIndex.load(con.getLhs()) != null) {
+                usable.add(con);
+            }
+        }
+        return usable;
+    }
+
+    public boolean open() {
+        /** A probe reuses the reader left open by the previous one **/
+        if (probeAttr != null && reader != null) {
+            eos = false;
+            pageTuples.clear();
+            pageCursor = 0;
+            if (index == null) {
+                reader.seek(0);
+            } else {
+                rids = index.lookup(probeKey);
+                ridCursor = 0;
+            }
+            return true;
+        }
+        index = null;
+        rids = null;
+        if (!super.open()) {
+            return false;
+        }
+        if (reader == null) {
+            return true;
+        }
+        Attribute attr = probeAttr != null ? probeAttr : indexCondition.getLhs();
+        index = BTreeIndex.load(attr);
+        int col = schema.indexOf(attr);
+        if (index == null || col < 0 || !index.matches(reader.getHeader(), col)) {
+            System.out.printf("IndexScan: no usable index on %s, scanning %s\n", attr, tabname);
+            index = null;
+            return true;
+        }
+        rids = probeAttr != null ? index.lookup(probeKey) : index.search(indexCondition);
+        ridCursor = 0;
+        return true;
+    }
+
+    /**
+     * Fills a batch with the tuples at the locations found in the index
+     **/
+    protected Batch nextFromPages() {
+        if (rids == null) {
+            return super.nextFromPages();
+        }
+        Batch tuples = new Batch(batchsize);
+        while (!tuples.isFull()) {
+            if (pageCursor == pageTuples.size()) {
+                pageTuples.clear();
+                pageCursor = 0;
+                if (ridCursor == rids.length) {
+                    eos = true;
+                    return tuples;
+                }
+                readQualifying();
+                continue;
+            }
+            tuples.add(pageTuples.get(pageCursor++));
+        }
+        return tuples;
+    }
+
+    /**
+     * Decodes the page of the next location and keeps the tuples of all its locations
+     **/
+    protected void readQualifying() {
+        int pageno = BTreeIndex.pageOf(rids[ridCursor]);
+        ArrayList<Tuple> page = new ArrayList<>();
+        if (pageno < reader.getNumPages()) {
+            reader.readPage(pageno, page);
+        }
+        while (ridCursor < rids.length && BTreeIndex.pageOf(rids[ridCursor]) == pageno) {
+            int slot = BTreeIndex.slotOf(rids[ridCursor++]);
+            if (slot < 0 || slot >= page.size()) {
+                System.out.printf("IndexScan: %s points past page %d of %s\n", index.getFileName(), pageno, tabname);
+                System.exit(1);
+            }
+            pageTuples.add(page.get(slot));
+        }
+    }
+
+    /**
+     * The tuples found through the index are read row by row
+     **/
+    public boolean isVectorized() {
+        return false;
+    }
+
+    public ColumnBatch nextColumns() {
+        Batch batch = next();
+        return batch == null ? null : ColumnBatch.fromBatch(batch, schema);
+    }
+
+    /**
+     * A probed scan stays open between the probes until closeProbe
+     **/
+    public boolean close() {
+        if (probeAttr != null && reader != null) {
+            return true;
+        }
+        return super.close();
+    }
+
+    public boolean closeProbe() {
+        if (reader == null) {
+            return true;
+        }
+        boolean closed = super.close();
+        reader = null;
+        return closed;
+    }
+
+    public Object clone() {
+        if (probeAttr != null) {
+            IndexScan newscan = new IndexScan(tabname, probeAttr);
+            newscan.setSchema((Schema) schema.clone());
+            newscan.setEncodedColumns(encodedColumns);
+            return newscan;
+        }
+        IndexScan newscan = new IndexScan(tabname, (Condition) indexCondition.clone());
+        newscan.setSchema((Schema) schema.clone());
+        newscan.setEncodedColumns(encodedColumns);
+        newscan.setZoneConditions(zoneConditions);
+        return newscan;
+    }
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Scans a large base table through memory mapped windows
+ **/
+
+package qp.operators;
+
+import qp.utils.MappedTableReader;
+import qp.utils.Schema;
+import qp.utils.TableFile;
+import qp.utils.TableReader;
+
+import java.io.File;
+
+/**
+ * MappedScan - same as Scan, but the pages of the table file are decoded
+ * * directly from the mapped file instead of being copied into a buffer first.
+ * * Only applicable to paged table files
+ */
+public class MappedScan extends Scan {
+
+    static long threshold = 64L * 1024 * 1024;  // Tables of at least this many bytes are mapped
+
+    public MappedScan(String tabname, int type) {
+        super(tabname, type);
+    }
+
+    public static void setThreshold(long size) {
+        threshold = size;
+    }
+
+    public static long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Whether the given table is large enough to be scanned through mapping
+     **/
+    public static boolean isApplicable(String tabname) {
+        String filename = tabname + ".tbl";
+        return new File(filename).length() >= threshold && TableFile.isPaged(filename);
+    }
+
+    protected TableReader createReader() {
+        return new MappedTableReader(filename, getTableSchema());
+    }
+
+    public Object clone() {
+        MappedScan newscan = new MappedScan(tabname, optype);
+        newscan.setSchema((Schema) getTableSchema().clone());
+        newscan.setEncodedColumns(encodedColumns);
+        newscan.setZoneConditions(zoneConditions);
+        newscan.setConditions(conditions);
+        if (tableSchema != null) {
+            newscan.setProjection(schema.getAttList());
+        }
+        return newscan;
+    }
+
+}
@@ -6,23 +6,27 @@ package qp.operators;
 
 import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.BufferPool;
 import qp.utils.Condition;
 import qp.utils.Tuple;
+import qp.utils.TupleReader;
+import qp.utils.TupleWriter;
 
-import java.io.*;
+import java.io.File;
 import java.util.ArrayList;
 
 public class NestedJoin extends Join {
 
     static int filenum = 0;         // To get unique filenum for this operation
     int batchsize;                  // Number of tuples per out batch
+    int rightbatchsize;             // Number of tuples per batch of the right table
     ArrayList<Integer> leftindex;   // Indices of the join attributes in left table
     ArrayList<Integer> rightindex;  // Indices of the join attributes in right table
     String rfname;                  // The file name where the right table is materialized
     Batch outbatch;                 // Buffer page for output
     Batch leftbatch;                // Buffer page for left input stream
     Batch rightbatch;               // Buffer page for right input stream
-    ObjectInputStream in;           // File pointer to the right hand materialized file
+    TupleReader in;                 // File pointer to the right hand materialized file
 
     int lcurs;                      // Cursor for left side buffer
     int rcurs;                      // Cursor for right side buffer
@@ -45,6 +49,7 @@ public class NestedJoin extends Join {
         /** select number of tuples per batch **/
         int tuplesize = schema.getTupleSize();
         batchsize = Batch.getPageSize() / tuplesize;
+        rightbatchsize = Math.max(1, Batch.getPageSize() / right.getSchema().getTupleSize());
 
         /** find indices attributes of join conditions **/
         leftindex = new ArrayList<>();
@@ -78,16 +83,17 @@ public class NestedJoin extends Join {
              **/
             filenum++;
             rfname = "NJtemp-" + filenum;
-            try {
-                ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(rfname));
-                while ((rightpage = right.next()) != null) {
-                    out.writeObject(rightpage);
-                }
-                out.close();
-            } catch (IOException io) {
+            TupleWriter out = new TupleWriter(rfname, right.getSchema(), rightbatchsize);
+            if (!out.open()) {
                 System.out.println("NestedJoin: Error writing to temporary file");
                 return false;
             }
+            while ((rightpage = right.next()) != null) {
+                for (int i = 0; i < rightpage.size(); ++i) {
+                    out.next(rightpage.get(i));
+                }
+            }
+            out.close();
             if (!right.close())
                 return false;
         }
@@ -117,63 +123,52 @@ public class NestedJoin extends Join {
                 /** Whenever a new left page came, we have to start the
                  ** scanning of right table
                  **/
-                try {
-                    // System.out.println("NL: Reading in right file, Setting eosr to be false");
-                    in = new ObjectInputStream(new FileInputStream(rfname));
-                    eosr = false;
-                } catch (IOException io) {
+                // System.out.println("NL: Reading in right file, Setting eosr to be false");
+                in = new TupleReader(rfname, right.getSchema(), rightbatchsize);
+                if (!in.open()) {
                     System.err.println("NestedJoin:error in reading the file");
                     System.exit(1);
                 }
+                eosr = false;
             }
 
             while (eosr == false) {
-                try {
-                    if (rcurs == 0 && lcurs == 0) {
-                        rightbatch = (Batch) in.readObject();
+                if (rcurs == 0 && lcurs == 0) {
+                    rightbatch = in.nextBatch();
+                    if (rightbatch == null) {
+                        in.close();
+                        eosr = true;
+                        break;
                     }
-                    for (i = lcurs; i < leftbatch.size(); ++i) {
-                        for (j = rcurs; j < rightbatch.size(); ++j) {
-                            Tuple lefttuple = leftbatch.get(i);
-                            Tuple righttuple = rightbatch.get(j);
-                            if (lefttuple.checkJoin(righttuple, leftindex, rightindex)) {
-                                Tuple outtuple = lefttuple.joinWith(righttuple);
-                                outbatch.add(outtuple);
-                                if (outbatch.isFull()) {
-                                    if (i == leftbatch.size() - 1 && j == rightbatch.size() - 1) {  //case 1
-                                        lcurs = 0;
-                                        rcurs = 0;
-                                    } else if (i != leftbatch.size() - 1 && j == rightbatch.size() - 1) {  //case 2
-                                        lcurs = i + 1;
-                                        rcurs = 0;
-                                    } else if (i == leftbatch.size() - 1 && j != rightbatch.size() - 1) {  //case 3
-                                        lcurs = i;
-                                        rcurs = j + 1;
-                                    } else {
-                                        lcurs = i;
-                                        rcurs = j + 1;
-                                    }
-                                    return outbatch;
+                }
+                for (i = lcurs; i < leftbatch.size(); ++i) {
+                    for (j = rcurs; j < rightbatch.size(); ++j) {
+                        Tuple lefttuple = leftbatch.get(i);
+                        Tuple righttuple = rightbatch.get(j);
+                        if (lefttuple.checkJoin(righttuple, leftindex, rightindex)) {
+                            Tuple outtuple = lefttuple.joinWith(righttuple);
+                            outbatch.add(outtuple);
+                            if (outbatch.isFull()) {
+                                if (i == leftbatch.size() - 1 && j == rightbatch.size() - 1) {  //case 1
+                                    lcurs = 0;
+                                    rcurs = 0;
+                                } else if (i != leftbatch.size() - 1 && j == rightbatch.size() - 1) {  //case 2
+                                    lcurs = i + 1;
+                                    rcurs = 0;
+                                } else if (i == leftbatch.size() - 1 && j != rightbatch.size() - 1) {  //case 3
+                                    lcurs = i;
+                                    rcurs = j + 1;
+                                } else {
+                                    lcurs = i;
+                                    rcurs = j + 1;
                                 }
+                                return outbatch;
                             }
                         }
-                        rcurs = 0;
                     }
-                    lcurs = 0;
-                } catch (EOFException e) {
-                    try {
-                        in.close();
-                    } catch (IOException io) {
-                        System.out.println("NestedJoin: Error in reading temporary file");
-                    }
-                    eosr = true;
-                } catch (ClassNotFoundException c) {
-                    System.out.println("NestedJoin: Error in deserialising temporary file ");
-                    System.exit(1);
-                } catch (IOException io) {
-                    System.out.println("NestedJoin: Error in reading temporary file");
-                    System.exit(1);
+                    rcurs = 0;
                 }
+                lcurs = 0;
             }
         }
         return outbatch;
@@ -185,6 +180,7 @@ public class NestedJoin extends Join {
     public boolean close() {
         File f = new File(rfname);
         f.delete();
+        BufferPool.invalidate(rfname);
         return true;
     }
 
@@ -13,4 +13,6 @@ public class OpType {
     public static final int SORT = 4;
     public static final int DISTINCT = 5;
     public static final int ORDERBY = 6;
+    public static final int INDEXSCAN = 7;
+    public static final int EXCHANGE = 8;
 }
@@ -4,6 +4,7 @@
 package qp.operators;
 
 import qp.utils.Batch;
+import qp.utils.ColumnBatch;
 import qp.utils.Schema;
 
 public class Operator {
@@ -43,6 +44,23 @@ public class Operator {
         return null;
     }
 
+    /**
+     * Next batch in columnar form, null at the end of the stream.
+     * * Operators without a vectorized path transpose the batches of next
+     **/
+    public ColumnBatch nextColumns() {
+        Batch batch = next();
+        return batch == null ? null : ColumnBatch.fromBatch(batch, schema);
+    }
+
+    /**
+     * Whether nextColumns produces the batches without building tuples,
+     * * only known once the operator is opened
+     **/
+    public boolean isVectorized() {
+        return false;
+    }
+
     public boolean close() {
         return true;
     }
@@ -25,6 +25,8 @@ public class OrderBy extends Operator {
     ArrayList<Attribute> orderedlist;
     // Attributes list of the schema to be ordered 
     ArrayList<Integer> asIndices = new ArrayList<>();
+    // Whether each attribute is ordered in descending order, null for all ascending
+    boolean[] descending;
 
     // Number of tuples per page
     int batchSize;
@@ -60,9 +62,8 @@ public class OrderBy extends Operator {
             Attribute attribute = orderedlist.get(i);
             asIndices.add(schema.indexOf(attribute));
         }
-        sortedFile = new Sort(base, orderedlist, numBuff);
-        sortedFile.open();
-        return true;
+        sortedFile = new Sort(base, orderedlist, descending, numBuff);
+        return sortedFile.open();
     }
 
     /**
@@ -108,6 +109,14 @@ public class OrderBy extends Operator {
         this.numBuff = numBuff;
     }
 
+    public void setDescending(boolean[] descending) {
+        this.descending = descending;
+    }
+
+    public boolean[] getDescending() {
+        return descending;
+    }
+
     public Operator getBase() {
         return base;
     }
@@ -126,6 +135,9 @@ public class OrderBy extends Operator {
         }
 
         OrderBy newOrderBy = new OrderBy(newBase, newOrderByList);
+        if (descending != null) {
+            newOrderBy.setDescending(descending.clone());
+        }
         Schema newSchema = newBase.getSchema();
         newOrderBy.setSchema(newSchema);
         return newOrderBy;
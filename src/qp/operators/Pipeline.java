@@ -0,0 +1,412 @@
+/**
+ * Compiled Scan -> Select* -> Project pipelines
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Batch;
+import qp.utils.ColumnBatch;
+import qp.utils.Condition;
+import qp.utils.Dictionary;
+import qp.utils.Schema;
+import qp.utils.TableFile;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A chain of selections (and a projection) directly over the scan of a paged table is
+ * executed by one generated class: its loop runs over the columns of a decoded page,
+ * evaluates all the conditions inline on the primitive values and builds the output
+ * tuples straight from the projected columns, instead of passing every tuple through
+ * the next() of each operator and an intermediate batch between them.
+ * The source of the class is generated for the column layout of the table once it is
+ * opened, compiled in memory with the system Java compiler and defined as a hidden
+ * class. The operators of the chain stay in the plan and run interpreted whenever the
+ * pipeline cannot be compiled: codegen disabled, no compiler in the runtime, a table
+ * in another format or a condition the generator does not handle.
+ */
+public class Pipeline {
+
+    /**
+     * Loop of the generated class over the rows of a page
+     */
+    public interface Kernel {
+        // Adds the output tuples of the qualifying rows from row from on until out is full,
+        // returns the first row left
+        int process(ColumnBatch page, int from, Batch out);
+    }
+
+    static boolean enabled = false;                            // Whether the pipelines are compiled
+    static final HashMap<String, Kernel> kernels = new HashMap<>();  // Kernels compiled, by source
+    static int classnum = 0;                                   // To get unique generated class names
+    static boolean noCompiler = false;                         // Set once the compiler was found missing
+
+    final Scan scan;                   // Scan at the bottom of the chain
+    final ArrayList<Condition> conditions;  // Conditions of the selections of the chain
+    final ArrayList<Attribute> projected;   // Projected attributes, null without a projection
+
+    Kernel kernel;                     // Loop compiled for the layout of the opened table
+    ColumnBatch page;                  // Page being processed
+    int rowCursor;                     // Next row of the page to be processed
+    boolean eos;                       // Whether the last page was processed
+
+    Pipeline(Scan scan, ArrayList<Condition> conditions, ArrayList<Attribute> projected) {
+        this.scan = scan;
+        this.conditions = conditions;
+        this.projected = projected;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Attaches a pipeline to the top operator of every Scan -> Select* (-> Project)
+     * * chain of the execution plan, the plan itself is left as it is
+     **/
+    public static void attach(Operator node) {
+        if (node.getOpType() == OpType.PROJECT || node.getOpType() == OpType.SELECT) {
+            Pipeline pipeline = chainOf(node);
+            if (pipeline != null) {
+                if (node.getOpType() == OpType.PROJECT) {
+                    ((Project) node).setPipeline(pipeline);
+                } else {
+                    ((Select) node).setPipeline(pipeline);
+                }
+                return;
+            }
+            attach(node.getOpType() == OpType.PROJECT ? ((Project) node).getBase() : ((Select) node).getBase());
+        } else if (node.getOpType() == OpType.JOIN) {
+            attach(((Join) node).getLeft());
+            /** The inner table of an index nested join is probed through its Select operators **/
+            if (!(node instanceof IndexNestedJoin)) {
+                attach(((Join) node).getRight());
+            }
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            attach(((Distinct) node).getBase());
+        } else if (node.getOpType() == OpType.ORDERBY) {
+            attach(((OrderBy) node).getBase());
+        }
+    }
+
+    /**
+     * Pipeline of the chain topped by the given node, null if it is not such a chain
+     **/
+    static Pipeline chainOf(Operator node) {
+        ArrayList<Attribute> projected = null;
+        if (node.getOpType() == OpType.PROJECT) {
+            projected = ((Project) node).getProjAttr();
+            for (Attribute attr : projected) {
+                if (attr.getAggType() != Attribute.NONE) {
+                    return null;
+                }
+            }
+            node = ((Project) node).getBase();
+        }
+        ArrayList<Condition> conditions = new ArrayList<>();
+        while (node.getOpType() == OpType.SELECT) {
+            conditions.addAll(0, ((Select) node).getConditions());
+            node = ((Select) node).getBase();
+        }
+        if (node.getOpType() != OpType.SCAN || (projected == null && conditions.isEmpty())) {
+            return null;
+        }
+        return new Pipeline((Scan) node, conditions, projected);
+    }
+
+    /**
+     * Opens the scan and compiles the loop for the layout of the table,
+     * * returns false, with the scan closed, if the chain has to be interpreted
+     **/
+    boolean open() {
+        if (!scan.open()) {
+            return false;
+        }
+        if (scan.isVectorized()) {
+            kernel = getKernel();
+        }
+        if (kernel == null) {
+            scan.close();
+            return false;
+        }
+        page = null;
+        rowCursor = 0;
+        eos = false;
+        return true;
+    }
+
+    /**
+     * Next batch of output tuples, null at the end
+     **/
+    Batch next(int batchsize) {
+        if (eos) {
+            return null;
+        }
+        Batch out = new Batch(batchsize);
+        while (!out.isFull()) {
+            if (page == null || rowCursor == page.size()) {
+                page = scan.nextColumns();
+                rowCursor = 0;
+                if (page == null) {
+                    eos = true;
+                    return out.isEmpty() ? null : out;
+                }
+                continue;
+            }
+            rowCursor = kernel.process(page, rowCursor, out);
+        }
+        return out;
+    }
+
+    boolean close() {
+        page = null;
+        return scan.close();
+    }
+
+    /**
+     * Kernel for the current layout of the table, null if it cannot be compiled
+     **/
+    Kernel getKernel() {
+        String source = generate();
+        if (source == null) {
+            return null;
+        }
+        synchronized (kernels) {
+            Kernel known = kernels.get(source);
+            if (known == null && !noCompiler) {
+                known = compile(source);
+                if (known != null) {
+                    kernels.put(source, known);
+                }
+            }
+            return known;
+        }
+    }
+
+    /**
+     * Source of the kernel, with the class name as placeholder, null if
+     * * a condition cannot be generated
+     **/
+    String generate() {
+        /** The pages hold the columns of the scan, which may leave columns of the table out **/
+        Schema schema = scan.getSchema();
+        Schema table = scan.getTableSchema();
+        byte[] encodings = scan.reader.getHeader().encodings;
+        int numCols = schema.getNumCols();
+        int[] kinds = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            Attribute attr = schema.getAttribute(i);
+            boolean coded = encodings[table.indexOf(attr)] == TableFile.DICT && scan.getEncodedColumns().contains(attr);
+            kinds[i] = ColumnBatch.kindOf(schema.typeOf(i), coded);
+        }
+
+        StringBuilder body = new StringBuilder();
+        boolean[] used = new boolean[numCols];
+        for (Condition con : conditions) {
+            String test = generateCondition(con, schema, kinds, used);
+            if (test == null) {
+                return null;
+            }
+            body.append("            if (!(").append(test).append(")) continue;\n");
+        }
+        int[] cols;
+        if (projected == null) {
+            cols = new int[numCols];
+            for (int i = 0; i < numCols; ++i) {
+                cols[i] = i;
+            }
+        } else {
+            cols = new int[projected.size()];
+            for (int i = 0; i < cols.length; ++i) {
+                cols[i] = schema.indexOf(projected.get(i).getBaseAttribute());
+                if (cols[i] < 0) {
+                    return null;
+                }
+            }
+        }
+        body.append("            java.util.ArrayList<Object> data = new java.util.ArrayList<>(").append(cols.length).append(");\n");
+        for (int col : cols) {
+            used[col] = true;
+            body.append("            data.add(c").append(col).append("[r]);\n");
+        }
+        body.append("            out.add(new qp.utils.Tuple(data));\n");
+
+        StringBuilder src = new StringBuilder();
+        src.append("package qp.operators;\n\n");
+        src.append("public final class $NAME implements qp.operators.Pipeline.Kernel {\n");
+        src.append("    public int process(qp.utils.ColumnBatch page, int from, qp.utils.Batch out) {\n");
+        for (int i = 0; i < numCols; ++i) {
+            if (!used[i]) {
+                continue;
+            }
+            if (kinds[i] == ColumnBatch.INTS) {
+                src.append("        int[] c").append(i).append(" = page.ints(").append(i).append(");\n");
+            } else if (kinds[i] == ColumnBatch.FLOATS) {
+                src.append("        float[] c").append(i).append(" = page.floats(").append(i).append(");\n");
+            } else {
+                src.append("        Object[] c").append(i).append(" = page.objects(").append(i).append(");\n");
+            }
+        }
+        src.append("        int n = page.size();\n");
+        src.append("        int r = from;\n");
+        src.append("        for (; r < n && !out.isFull(); ++r) {\n");
+        src.append(body);
+        src.append("        }\n");
+        src.append("        return r;\n");
+        src.append("    }\n");
+        src.append("}\n");
+        return src.toString();
+    }
+
+    /**
+     * Java expression of a condition on row r, null if it is not supported
+     **/
+    static String generateCondition(Condition con, Schema schema, int[] kinds, boolean[] used) {
+        int col = schema.indexOf(con.getLhs());
+        int datatype = schema.typeOf(con.getLhs());
+        String op = operator(con.getExprType());
+        if (col < 0 || op == null || datatype == Attribute.TIME) {
+            return null;
+        }
+        used[col] = true;
+        String value = "c" + col + "[r]";
+
+        if (con.getRhs() instanceof Attribute) {
+            int other = schema.indexOf((Attribute) con.getRhs());
+            if (other < 0 || kinds[other] != kinds[col] || schema.typeOf(other) != datatype) {
+                return null;
+            }
+            used[other] = true;
+            String otherValue = "c" + other + "[r]";
+            if (kinds[col] == ColumnBatch.OBJECTS) {
+                return "((String) " + value + ").compareTo((String) " + otherValue + ") " + op + " 0";
+            }
+            return value + " " + op + " " + otherValue;
+        }
+
+        String literal = (String) con.getRhs();
+        int exprtype = con.getExprType();
+        if (datatype == Attribute.STRING && kinds[col] == ColumnBatch.INTS) {
+            /** Dictionary codes, a literal missing from the dictionary lies just below its lower bound **/
+            Dictionary dict = Dictionary.load(con.getLhs());
+            if (dict == null) {
+                return null;
+            }
+            int bound = dict.lowerBound(literal);
+            if (dict.encode(literal) < 0) {
+                if (exprtype == Condition.EQUAL) {
+                    return "false";
+                } else if (exprtype == Condition.NOTEQUAL) {
+                    return "true";
+                } else if (exprtype == Condition.LTOE) {
+                    op = "<";
+                } else if (exprtype == Condition.GREATERTHAN) {
+                    op = ">=";
+                }
+            }
+            return value + " " + op + " " + bound;
+        } else if (datatype == Attribute.STRING) {
+            return "((String) " + value + ").compareTo(" + quote(literal) + ") " + op + " 0";
+        } else if (datatype == Attribute.INT) {
+            return value + " " + op + " " + Integer.parseInt(literal);
+        } else if (datatype == Attribute.REAL) {
+            return value + " " + op + " Float.intBitsToFloat(" + Float.floatToIntBits(Float.parseFloat(literal)) + ")";
+        }
+        return null;
+    }
+
+    static String operator(int exprtype) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return "<";
+            case Condition.GREATERTHAN:
+                return ">";
+            case Condition.LTOE:
+                return "<=";
+            case Condition.GTOE:
+                return ">=";
+            case Condition.EQUAL:
+                return "==";
+            case Condition.NOTEQUAL:
+                return "!=";
+            default:
+                return null;
+        }
+    }
+
+    // Java string literal of the value. Unicode escapes would be translated before the
+    // literal is read, so backslashes and quotes get ordinary escapes and control
+    // characters octal ones
+    static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '\\' || c == '"') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                quoted.append(String.format("\\%03o", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Compiles the source in memory and defines it as a hidden class of this package
+     **/
+    static Kernel compile(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.out.println("Pipeline: no Java compiler in this runtime, running interpreted");
+            noCompiler = true;
+            return null;
+        }
+        String name = "Kernel" + (++classnum);
+        String code = source.replace("$NAME", name);
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///qp/operators/" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JavaFileManager manager = new ForwardingJavaFileManager<JavaFileManager>(compiler.getStandardFileManager(null, null, null)) {
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + className + ".class"), kind) {
+                    public OutputStream openOutputStream() {
+                        return bytes;
+                    }
+                };
+            }
+        };
+        List<String> options = List.of("-classpath", System.getProperty("java.class.path"), "-nowarn");
+        if (!compiler.getTask(null, manager, null, options, null, List.of(file)).call()) {
+            System.out.println("Pipeline: error in compiling the pipeline, running interpreted");
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes.toByteArray(), true);
+            return (Kernel) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            System.out.println("Pipeline: error in defining the pipeline, running interpreted");
+            return null;
+        }
+    }
+}
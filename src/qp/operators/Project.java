@@ -6,6 +6,7 @@ package qp.operators;
 
 import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.ColumnBatch;
 import qp.utils.Schema;
 import qp.utils.Tuple;
 
@@ -23,6 +24,11 @@ public class Project extends Operator {
      **/
     Batch inbatch;
     Batch outbatch;
+    boolean vectorized;    // Whether the base operator produces column batches
+    ColumnBatch invector;  // Current input column batch
+    int vcurs;             // Next selected row of the column batch to be output
+    Pipeline pipeline;     // Compiled chain of this and the operators below, null if none
+    boolean compiled;      // Whether the compiled pipeline runs instead of the operators
 
     /**
      * index of the attributes in the base operator
@@ -44,6 +50,10 @@ public class Project extends Operator {
         this.base = base;
     }
 
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
     public ArrayList<Attribute> getProjAttr() {
         return attrset;
     }
@@ -59,6 +69,11 @@ public class Project extends Operator {
         int tuplesize = schema.getTupleSize();
         batchsize = Batch.getPageSize() / tuplesize;
 
+        compiled = pipeline != null && pipeline.open();
+        if (compiled) {
+            vectorized = false;
+            return true;
+        }
         if (!base.open()) return false;
 
         /** The following loop finds the index of the columns that
@@ -77,14 +92,47 @@ public class Project extends Operator {
             int index = baseSchema.indexOf(attr.getBaseAttribute());
             attrIndex[i] = index;
         }
+        vectorized = base.isVectorized();
+        invector = null;
+        vcurs = 0;
         return true;
     }
 
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    /**
+     * The projected columns of the next column batch, nothing is copied
+     **/
+    public ColumnBatch nextColumns() {
+        if (!vectorized) {
+            return super.nextColumns();
+        }
+        ColumnBatch columns = base.nextColumns();
+        return columns == null ? null : columns.project(attrIndex);
+    }
+
     /**
      * Read next tuple from operator
      */
     public Batch next() {
+        if (compiled) {
+            return pipeline.next(batchsize);
+        }
         outbatch = new Batch(batchsize);
+        if (vectorized) {
+            /** Tuples are only built out of the projected columns of the selected rows **/
+            while (invector == null || vcurs == invector.numSelected()) {
+                invector = base.nextColumns();
+                vcurs = 0;
+                if (invector == null) {
+                    return null;
+                }
+            }
+            vcurs = invector.appendTo(outbatch, vcurs, attrIndex);
+            return outbatch;
+        }
         /** all the tuples in the inbuffer goes to the output buffer **/
         inbatch = base.next();
 
@@ -112,6 +160,9 @@ public class Project extends Operator {
      */
     public boolean close() {
         inbatch = null;
+        if (compiled) {
+            return pipeline.close();
+        }
         base.close();
         return true;
     }
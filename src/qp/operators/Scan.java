@@ -4,17 +4,31 @@
 
 package qp.operators;
 
+import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.ColumnBatch;
+import qp.utils.Condition;
+import qp.utils.RowPredicate;
 import qp.utils.Schema;
+import qp.utils.TableFile;
+import qp.utils.TableReader;
 import qp.utils.Tuple;
+import qp.utils.ZoneMap;
 
 import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Scan operator - read data from a file
+ * * Paged table files (see TableFile) are decoded a whole page at a time,
+ * * files of serialized tuples are still read tuple by tuple.
+ * * The planner may push selection conditions and a projection down into the
+ * * scan: the rows of a page are then checked on their encoded attributes and
+ * * only the qualifying rows are decoded, into tuples of the projected columns
  */
 public class Scan extends Operator {
 
@@ -24,6 +38,37 @@ public class Scan extends Operator {
     ObjectInputStream in;  // Input file being scanned
     boolean eos;           // To indicate whether end of stream reached or not
 
+    TableReader reader;           // Reader of the paged table file, null for the serialized format
+    ArrayList<Tuple> pageTuples;  // Tuples decoded from the current page
+    int pageCursor;               // Next tuple of the current page to be returned
+
+    /**
+     * Dictionary encoded attributes that may be returned as their
+     * * Integer codes instead of strings, set by the planner
+     **/
+    ArrayList<Attribute> encodedColumns = new ArrayList<>();
+
+    /**
+     * Selection conditions on the table, pages whose zone map shows
+     * * that none of their tuples can satisfy them are skipped.
+     * * The conditions are still checked by the Select operators above
+     **/
+    ArrayList<Condition> zoneConditions = new ArrayList<>();
+    ZoneMap zoneMap;  // Zone map of the table, null if no page can be skipped
+
+    /**
+     * Selection conditions checked by the scan itself, set by the planner
+     * * instead of a Select above. All of them must hold
+     **/
+    ArrayList<Condition> conditions = new ArrayList<>();
+    TuplePredicate[] predicates;  // Conditions compiled for files of serialized tuples
+
+    Schema tableSchema;  // Schema of the whole table, null unless columns are left out
+    int[] columns;       // Position in the table of every column of the scan, null for all of them
+
+    AtomicInteger morsels;  // Next morsel of the table, shared with the parallel copies of the scan
+    int morselPages;        // Number of pages per morsel
+
     /**
      * Constructor - just save filename
      */
@@ -37,6 +82,73 @@ public class Scan extends Operator {
         return tabname;
     }
 
+    public ArrayList<Attribute> getEncodedColumns() {
+        return encodedColumns;
+    }
+
+    public void setEncodedColumns(ArrayList<Attribute> columns) {
+        this.encodedColumns = columns;
+    }
+
+    public ArrayList<Condition> getZoneConditions() {
+        return zoneConditions;
+    }
+
+    public void setZoneConditions(ArrayList<Condition> conditions) {
+        this.zoneConditions = conditions;
+    }
+
+    public ArrayList<Condition> getConditions() {
+        return conditions;
+    }
+
+    public void setConditions(ArrayList<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Makes the scan read the pages of a paged table by morsels claimed from the
+     * * given counter, parallel scans sharing the counter split the table between them
+     **/
+    public void setMorsels(AtomicInteger morsels, int morselPages) {
+        this.morsels = morsels;
+        this.morselPages = morselPages;
+    }
+
+    /**
+     * Restricts the tuples returned to the given columns of the table, in table order
+     **/
+    public void setProjection(ArrayList<Attribute> projection) {
+        Schema table = getTableSchema();
+        ArrayList<Attribute> attrs = new ArrayList<>();
+        for (Attribute attr : table.getAttList()) {
+            if (projection.contains(attr)) {
+                attrs.add(attr);
+            }
+        }
+        tableSchema = table;
+        setSchema(table.subSchema(attrs));
+    }
+
+    /**
+     * Flags the attributes of the given schema that are kept as codes
+     **/
+    protected boolean[] keepCodes(Schema schm) {
+        boolean[] keep = new boolean[schm.getNumCols()];
+        for (int i = 0; i < keep.length; ++i) {
+            keep[i] = encodedColumns.contains(schm.getAttribute(i));
+        }
+        return keep;
+    }
+
+    /**
+     * Schema of the whole base table, which is also the
+     * * schema of the scan unless columns are left out
+     **/
+    public Schema getTableSchema() {
+        return tableSchema == null ? schema : tableSchema;
+    }
+
     /**
      * Open file prepare a stream pointer to read input file
      */
@@ -45,15 +157,67 @@ public class Scan extends Operator {
         int tuplesize = schema.getTupleSize();
         batchsize = Batch.getPageSize() / tuplesize;
         eos = false;
+        Schema table = getTableSchema();
+        columns = null;
+        if (tableSchema != null) {
+            columns = new int[schema.getNumCols()];
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i] = table.indexOf(schema.getAttribute(i));
+            }
+        }
+        if (TableFile.isPaged(filename)) {
+            reader = createReader();
+            reader.setKeepCodes(keepCodes(table));
+            if (morsels != null) {
+                /** The parallel scans are the ones reading ahead **/
+                reader.setMorsels(morsels, morselPages);
+                reader.setPrefetch(0);
+            }
+            pageTuples = new ArrayList<>();
+            pageCursor = 0;
+            if (!reader.open()) {
+                return false;
+            }
+            /** The pushed conditions are checked on the encoded rows **/
+            if (!conditions.isEmpty() || columns != null) {
+                RowPredicate filter = null;
+                if (!conditions.isEmpty()) {
+                    filter = RowPredicate.compile(conditions, table, reader.getHeader().encodings);
+                }
+                reader.setRowFilter(filter, columns);
+            }
+            zoneMap = zoneConditions.isEmpty() ? null : ZoneMap.load(tabname);
+            /** A zone map left over from an earlier load of the table is of no use **/
+            if (zoneMap != null && zoneMap.getNumPages() != reader.getNumPages()) {
+                zoneMap = null;
+            }
+            /** Pages that cannot hold a qualifying tuple are skipped by the reader **/
+            if (zoneMap != null) {
+                ZoneMap zones = zoneMap;
+                reader.setPageFilter(pageno -> zones.mayMatch(pageno, table, zoneConditions));
+            }
+            return true;
+        }
         try {
             in = new ObjectInputStream(new FileInputStream(filename));
         } catch (Exception e) {
             System.err.println(" Error reading " + filename);
             return false;
         }
+        predicates = new TuplePredicate[conditions.size()];
+        for (int i = 0; i < predicates.length; ++i) {
+            predicates[i] = TuplePredicate.compile(conditions.get(i), table, 0, false);
+        }
         return true;
     }
 
+    /**
+     * Reader used for paged table files
+     **/
+    protected TableReader createReader() {
+        return new TableReader(filename, getTableSchema());
+    }
+
     /**
      * Next operator - get a tuple from the file
      **/
@@ -63,11 +227,16 @@ public class Scan extends Operator {
             close();
             return null;
         }
+        if (reader != null) {
+            return nextFromPages();
+        }
         Batch tuples = new Batch(batchsize);
         while (!tuples.isFull()) {
             try {
                 Tuple data = (Tuple) in.readObject();
-                tuples.add(data);
+                if (qualifies(data)) {
+                    tuples.add(project(data));
+                }
             } catch (ClassNotFoundException cnf) {
                 System.err.println("Scan:Class not found for reading file  " + filename);
                 System.exit(1);
@@ -85,11 +254,92 @@ public class Scan extends Operator {
         return tuples;
     }
 
+    /**
+     * Whether a tuple read from a file of serialized tuples satisfies the pushed conditions
+     **/
+    protected boolean qualifies(Tuple tuple) {
+        for (TuplePredicate predicate : predicates) {
+            if (!predicate.test(tuple)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The columns of the scan out of a tuple of the whole table
+     **/
+    protected Tuple project(Tuple tuple) {
+        if (columns == null) {
+            return tuple;
+        }
+        ArrayList<Object> data = new ArrayList<>(columns.length);
+        for (int col : columns) {
+            data.add(tuple.dataAt(col));
+        }
+        return new Tuple(data);
+    }
+
+    /**
+     * Fills a batch from the decoded pages, the tuples of a page
+     * * may be spread over several batches and vice versa
+     **/
+    protected Batch nextFromPages() {
+        Batch tuples = new Batch(batchsize);
+        while (!tuples.isFull()) {
+            if (pageCursor == pageTuples.size()) {
+                pageTuples.clear();
+                pageCursor = 0;
+                if (!reader.nextPage(pageTuples)) {
+                    eos = true;
+                    return tuples;
+                }
+                continue;
+            }
+            tuples.add(pageTuples.get(pageCursor++));
+        }
+        return tuples;
+    }
+
+    /**
+     * Paged table files are decoded straight into columns
+     **/
+    public boolean isVectorized() {
+        return reader != null;
+    }
+
+    /**
+     * Next page of the table in columnar form, a page
+     * * is not to be split over several column batches
+     **/
+    public ColumnBatch nextColumns() {
+        if (reader == null) {
+            return super.nextColumns();
+        }
+        if (eos) {
+            close();
+            return null;
+        }
+        /** Pages without a qualifying row are not handed on **/
+        ColumnBatch page = reader.nextColumns();
+        while (page != null && page.size() == 0) {
+            page = reader.nextColumns();
+        }
+        if (page == null) {
+            eos = true;
+        }
+        return page;
+    }
+
     /**
      * Close the file.. This routine is called when the end of filed
      * * is already reached
      **/
     public boolean close() {
+        if (reader != null) {
+            pageTuples = null;
+            return reader.close();
+        }
         try {
             in.close();
         } catch (IOException e) {
@@ -102,7 +352,13 @@ public class Scan extends Operator {
     public Object clone() {
         String newtab = tabname;
         Scan newscan = new Scan(newtab, optype);
-        newscan.setSchema((Schema) schema.clone());
+        newscan.setSchema((Schema) getTableSchema().clone());
+        newscan.setEncodedColumns(encodedColumns);
+        newscan.setZoneConditions(zoneConditions);
+        newscan.setConditions(conditions);
+        if (tableSchema != null) {
+            newscan.setProjection(schema.getAttList());
+        }
         return newscan;
     }
 
@@ -6,20 +6,59 @@ package qp.operators;
 
 import qp.utils.*;
 
+import java.util.ArrayList;
+
+/**
+ * A Select checks a conjunction of conditions on the tuples of its base operator.
+ * The optimizer plans one Select per condition, the execution plan fuses the Selects
+ * stacked over one input into a single one (see RandomOptimizer.makeExecPlan), which
+ * checks each input batch one condition at a time over a selection of the rows still
+ * qualifying. The number of rows each condition is checked on and passes, and the time
+ * it takes, are counted, and every REORDER_INTERVAL batches the conditions are put in
+ * increasing order of cost / (1 - pass rate), so that the cheap and selective ones run
+ * first and the others only see the rows they let through.
+ */
 public class Select extends Operator {
 
-    Operator base;  // Base operator
-    Condition con;  // Select condition
-    int batchsize;  // Number of tuples per outbatch
+    static final int REORDER_INTERVAL = 16;  // Number of input batches between reorderings
+
+    Operator base;                   // Base operator
+    ArrayList<Condition> conditions; // Select conditions, all of which must hold
+    int batchsize;                   // Number of tuples per outbatch
 
     /**
      * The following fields are required during
      * * execution of the select operator
      **/
-    boolean eos;     // Indicate whether end of stream is reached or not
-    Batch inbatch;   // This is the current input buffer
-    Batch outbatch;  // This is the current output buffer
-    int start;       // Cursor position in the input buffer
+    boolean eos;      // Indicate whether end of stream is reached or not
+    Batch inbatch;    // This is the current input buffer
+    Batch outbatch;   // This is the current output buffer
+    int start;        // Cursor position in the qualifying rows of the input buffer
+    int[] qualifying; // Rows of the input buffer satisfying all the conditions
+    int numQualifying;        // Number of qualifying rows of the input buffer
+    int[] litBound;           // Smallest dictionary code not below the STRING literal, by condition
+    boolean[] litFound;       // Whether the STRING literal itself is in the dictionary, by condition
+    TuplePredicate[] predicates;  // Conditions compiled for the schema when opened
+
+    /**
+     * Statistics of the conditions, indexed like the conditions
+     **/
+    int[] order;              // Conditions in the order they are checked in
+    long[] evaluated;         // Number of rows each condition was checked on
+    long[] passed;            // Number of rows satisfying each condition
+    long[] nanos;             // Time spent checking each condition
+    int numBatches;           // Number of input batches filtered
+
+    /**
+     * Vectorized path, taken when the base operator produces column
+     * * batches and the conditions compare an attribute with a literal
+     **/
+    boolean vectorized;     // Whether the conditions are checked a column batch at a time
+    ColumnBatch invector;   // Current input column batch, its selection is the qualifying rows
+    int vcurs;              // Next selected row of the column batch to be output
+
+    Pipeline pipeline;      // Compiled chain of this and the operators below, null if none
+    boolean compiled;       // Whether the compiled pipeline runs instead of the operators
 
     /**
      * constructor
@@ -27,7 +66,14 @@ public class Select extends Operator {
     public Select(Operator base, Condition con, int type) {
         super(type);
         this.base = base;
-        this.con = con;
+        this.conditions = new ArrayList<>();
+        conditions.add(con);
+    }
+
+    public Select(Operator base, ArrayList<Condition> conditions, int type) {
+        super(type);
+        this.base = base;
+        this.conditions = conditions;
     }
 
     public Operator getBase() {
@@ -38,12 +84,86 @@ public class Select extends Operator {
         this.base = base;
     }
 
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * The first condition, the only one of the Selects planned by the optimizer
+     **/
     public Condition getCondition() {
-        return con;
+        return conditions.get(0);
     }
 
     public void setCondition(Condition cn) {
-        this.con = cn;
+        conditions = new ArrayList<>();
+        conditions.add(cn);
+    }
+
+    public ArrayList<Condition> getConditions() {
+        return conditions;
+    }
+
+    /**
+     * Number of rows the condition at the given position of getConditions was checked on
+     **/
+    public long getEvaluated(int index) {
+        return evaluated == null ? 0 : evaluated[index];
+    }
+
+    /**
+     * Number of rows which satisfied the condition at the given position
+     **/
+    public long getPassed(int index) {
+        return passed == null ? 0 : passed[index];
+    }
+
+    /**
+     * Observed fraction of the rows satisfying the condition at the given position
+     **/
+    public double getPassRate(int index) {
+        return getEvaluated(index) == 0 ? 1 : (double) getPassed(index) / getEvaluated(index);
+    }
+
+    /**
+     * Nanoseconds per row spent checking the condition at the given position
+     **/
+    public double getCostPerRow(int index) {
+        return getEvaluated(index) == 0 ? 0 : (double) nanos[index] / getEvaluated(index);
+    }
+
+    /**
+     * Positions of the conditions in the order they are currently checked in
+     **/
+    public int[] getEvaluationOrder() {
+        return order == null ? null : order.clone();
+    }
+
+    /**
+     * Adds the statistics of the conditions of a copy of this Select, such as
+     * * the ones run by the workers of an Exchange, and orders the conditions
+     * * as the statistics gathered so far rank them
+     **/
+    public synchronized void addStatistics(Select copy) {
+        if (copy.evaluated == null) {
+            return;
+        }
+        int numCons = copy.evaluated.length;
+        if (evaluated == null || evaluated.length != numCons) {
+            order = copy.order.clone();
+            evaluated = new long[numCons];
+            passed = new long[numCons];
+            nanos = new long[numCons];
+        }
+        for (int c = 0; c < numCons; ++c) {
+            evaluated[c] += copy.evaluated[c];
+            passed[c] += copy.passed[c];
+            nanos[c] += copy.nanos[c];
+        }
+        numBatches += copy.numBatches;
+        if (order.length > 1) {
+            reorder();
+        }
     }
 
     /**
@@ -52,21 +172,69 @@ public class Select extends Operator {
     public boolean open() {
         eos = false;  // Since the stream is just opened
         start = 0;    // Set the cursor to starting position in input buffer
+        numQualifying = 0;
+        inbatch = null;
 
         /** Set number of tuples per page**/
         int tuplesize = schema.getTupleSize();
         batchsize = Batch.getPageSize() / tuplesize;
 
-        return base.open();
+        compiled = pipeline != null && pipeline.open();
+        if (compiled) {
+            vectorized = false;
+            return true;
+        }
+
+        int numCons = conditions.size();
+        litBound = new int[numCons];
+        litFound = new boolean[numCons];
+        predicates = new TuplePredicate[numCons];
+        boolean literals = true;
+        for (int c = 0; c < numCons; ++c) {
+            Condition con = conditions.get(c);
+            /** STRING values may arrive as dictionary codes, compared to the literal through the dictionary **/
+            Dictionary dict = null;
+            if (schema.typeOf(con.getLhs()) == Attribute.STRING && con.getRhs() instanceof String) {
+                dict = Dictionary.load(con.getLhs());
+            }
+            if (dict != null) {
+                litBound[c] = dict.lowerBound((String) con.getRhs());
+                litFound[c] = dict.encode((String) con.getRhs()) >= 0;
+            }
+            predicates[c] = TuplePredicate.compile(con, schema, litBound[c], litFound[c]);
+            literals &= con.getRhs() instanceof String;
+        }
+        if (order == null || order.length != numCons) {
+            order = new int[numCons];
+            for (int c = 0; c < numCons; ++c) {
+                order[c] = c;
+            }
+            evaluated = new long[numCons];
+            passed = new long[numCons];
+            nanos = new long[numCons];
+        }
+        if (!base.open()) {
+            return false;
+        }
+        vectorized = base.isVectorized() && literals;
+        invector = null;
+        vcurs = 0;
+        return true;
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
     }
 
     /**
      * returns a batch of tuples that satisfies the
-     * * condition specified on the tuples coming from base operator
+     * * conditions specified on the tuples coming from base operator
      * * NOTE: This operation is performed on the fly
      **/
     public Batch next() {
-        int i = 0;
+        if (compiled) {
+            return pipeline.next(batchsize);
+        }
         if (eos) {
             close();
             return null;
@@ -74,146 +242,350 @@ public class Select extends Operator {
 
         /** An output buffer is initiated **/
         outbatch = new Batch(batchsize);
+        if (vectorized) {
+            return nextFromColumns();
+        }
 
         /** keep on checking the incoming pages until
          ** the output buffer is full
          **/
         while (!outbatch.isFull()) {
-            if (start == 0) {
+            if (start == numQualifying) {
                 inbatch = base.next();
                 /** There is no more incoming pages from base operator **/
                 if (inbatch == null) {
                     eos = true;
                     return outbatch;
                 }
+                numQualifying = filter(inbatch);
+                start = 0;
+                continue;
             }
+            outbatch.add(inbatch.get(qualifying[start++]));
+        }
+        return outbatch;
+    }
 
-            /** Continue this for loop until this page is fully observed
-             ** or the output buffer is full
-             **/
-            for (i = start; i < inbatch.size() && (!outbatch.isFull()); ++i) {
-                Tuple present = inbatch.get(i);
-                /** If the condition is satisfied then
-                 ** this tuple is added tot he output buffer
-                 **/
-                if (checkCondition(present))
-                    outbatch.add(present);
+    /**
+     * Finds the rows of the batch satisfying all the conditions,
+     * * checking each condition only on the rows the previous ones let through
+     **/
+    protected int filter(Batch batch) {
+        int n = batch.size();
+        if (qualifying == null || qualifying.length < n) {
+            qualifying = new int[Math.max(n, batchsize)];
+        }
+        for (int r = 0; r < n; ++r) {
+            qualifying[r] = r;
+        }
+        for (int k = 0; k < order.length && n > 0; ++k) {
+            int c = order[k];
+            TuplePredicate predicate = predicates[c];
+            long begin = System.nanoTime();
+            int m = 0;
+            for (int j = 0; j < n; ++j) {
+                int r = qualifying[j];
+                qualifying[m] = r;
+                m += predicate.test(batch.get(r)) ? 1 : 0;
             }
+            record(c, n, m, System.nanoTime() - begin);
+            n = m;
+        }
+        batchFiltered();
+        return n;
+    }
 
-            /** Modify the cursor to the position requierd
-             ** when the base operator is called next time;
-             **/
-            if (i == inbatch.size())
-                start = 0;
-            else
-                start = i;
+    protected void record(int c, int in, int out, long time) {
+        evaluated[c] += in;
+        passed[c] += out;
+        nanos[c] += time;
+    }
+
+    /**
+     * Reorders the conditions every REORDER_INTERVAL input batches
+     **/
+    protected void batchFiltered() {
+        if (++numBatches % REORDER_INTERVAL == 0 && order.length > 1) {
+            reorder();
+        }
+    }
+
+    /**
+     * Sorts the conditions on their rank cost / (1 - pass rate), a condition
+     * * not yet checked on any row ranks first so that it gets measured
+     **/
+    protected void reorder() {
+        double[] rank = new double[order.length];
+        for (int c = 0; c < order.length; ++c) {
+            double passrate = getPassRate(c);
+            if (evaluated[c] == 0) {
+                rank[c] = 0;
+            } else if (passrate >= 1) {
+                rank[c] = Double.MAX_VALUE;
+            } else {
+                rank[c] = getCostPerRow(c) / (1 - passrate);
+            }
+        }
+        /** Insertion sort, stable and there are only a few conditions **/
+        for (int i = 1; i < order.length; ++i) {
+            int c = order[i];
+            int j = i - 1;
+            while (j >= 0 && rank[order[j]] > rank[c]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = c;
+        }
+    }
+
+    /**
+     * Fills the output buffer with the tuples of the selected rows of the column batches
+     **/
+    protected Batch nextFromColumns() {
+        while (!outbatch.isFull()) {
+            if (invector == null || vcurs == invector.numSelected()) {
+                invector = nextColumns();
+                vcurs = 0;
+                if (invector == null) {
+                    eos = true;
+                    return outbatch;
+                }
+                continue;
+            }
+            vcurs = invector.appendTo(outbatch, vcurs, null);
         }
         return outbatch;
     }
 
+    /**
+     * Next column batch of the base operator with at least one qualifying row
+     **/
+    public ColumnBatch nextColumns() {
+        if (!vectorized) {
+            return super.nextColumns();
+        }
+        ColumnBatch columns;
+        while ((columns = base.nextColumns()) != null) {
+            for (int k = 0; k < order.length && columns.numSelected() > 0; ++k) {
+                int c = order[k];
+                int n = columns.numSelected();
+                long begin = System.nanoTime();
+                filter(columns, c);
+                record(c, n, columns.numSelected(), System.nanoTime() - begin);
+            }
+            batchFiltered();
+            if (columns.numSelected() > 0) {
+                return columns;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Narrows the selection of the column batch down to the rows satisfying
+     * * the given condition, with one tight loop over the column per comparison
+     **/
+    protected void filter(ColumnBatch columns, int c) {
+        Condition con = conditions.get(c);
+        int col = schema.indexOf(con.getLhs());
+        int datatype = schema.typeOf(con.getLhs());
+        int exprtype = con.getExprType();
+        String literal = (String) con.getRhs();
+        int[] sel = columns.selection();
+        int n = columns.numSelected();
+
+        if (columns.kindOf(col) == ColumnBatch.INTS && datatype == Attribute.STRING) {
+            /** Dictionary codes, a literal missing from the dictionary lies just below litBound **/
+            if (!litFound[c]) {
+                if (exprtype == Condition.EQUAL) {
+                    columns.setNumSelected(0);
+                    return;
+                } else if (exprtype == Condition.NOTEQUAL) {
+                    return;
+                } else if (exprtype == Condition.LTOE) {
+                    exprtype = Condition.LESSTHAN;
+                } else if (exprtype == Condition.GREATERTHAN) {
+                    exprtype = Condition.GTOE;
+                }
+            }
+            columns.setNumSelected(selectInts(columns.ints(col), sel, n, exprtype, litBound[c]));
+        } else if (columns.kindOf(col) == ColumnBatch.INTS) {
+            columns.setNumSelected(selectInts(columns.ints(col), sel, n, exprtype, Integer.parseInt(literal)));
+        } else if (columns.kindOf(col) == ColumnBatch.FLOATS) {
+            columns.setNumSelected(selectFloats(columns.floats(col), sel, n, exprtype, Float.parseFloat(literal)));
+        } else {
+            Object[] values = columns.objects(col);
+            int m = 0;
+            for (int k = 0; k < n; ++k) {
+                int r = sel[k];
+                sel[m] = r;
+                m += compare(((String) values[r]).compareTo(literal), exprtype) ? 1 : 0;
+            }
+            columns.setNumSelected(m);
+        }
+    }
+
+    /**
+     * Keeps the selected rows whose value compares to the literal as required,
+     * * returns their number. The loops are branch free so that the JIT can unroll them
+     **/
+    static int selectInts(int[] values, int[] sel, int n, int exprtype, int literal) {
+        int m = 0;
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] < literal ? 1 : 0;
+                }
+                break;
+            case Condition.GREATERTHAN:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] > literal ? 1 : 0;
+                }
+                break;
+            case Condition.LTOE:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] <= literal ? 1 : 0;
+                }
+                break;
+            case Condition.GTOE:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] >= literal ? 1 : 0;
+                }
+                break;
+            case Condition.EQUAL:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] == literal ? 1 : 0;
+                }
+                break;
+            case Condition.NOTEQUAL:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] != literal ? 1 : 0;
+                }
+                break;
+            default:
+                System.out.println("Select: Incorrect condition operator");
+        }
+        return m;
+    }
+
+    static int selectFloats(float[] values, int[] sel, int n, int exprtype, float literal) {
+        int m = 0;
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] < literal ? 1 : 0;
+                }
+                break;
+            case Condition.GREATERTHAN:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] > literal ? 1 : 0;
+                }
+                break;
+            case Condition.LTOE:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] <= literal ? 1 : 0;
+                }
+                break;
+            case Condition.GTOE:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] >= literal ? 1 : 0;
+                }
+                break;
+            case Condition.EQUAL:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] == literal ? 1 : 0;
+                }
+                break;
+            case Condition.NOTEQUAL:
+                for (int k = 0; k < n; ++k) {
+                    int r = sel[k];
+                    sel[m] = r;
+                    m += values[r] != literal ? 1 : 0;
+                }
+                break;
+            default:
+                System.out.println("Select: Incorrect condition operator");
+        }
+        return m;
+    }
+
     /**
      * closes the output connection
      * * i.e., no more pages to output
      **/
     public boolean close() {
+        if (compiled) {
+            return pipeline.close();
+        }
         base.close();    // Added base.close
         return true;
     }
 
     /**
-     * To check whether the selection condition is satisfied for
+     * To check whether the selection conditions are satisfied for
      * * the present tuple
      **/
     protected boolean checkCondition(Tuple tuple) {
-        Attribute attr = con.getLhs();
-        int index = schema.indexOf(attr);
-        int datatype = schema.typeOf(attr);
-        Object srcValue = tuple.dataAt(index);
-        int exprtype = con.getExprType();
-
-        if (datatype == Attribute.INT) {
-            int srcVal = ((Integer) srcValue).intValue();
-            int checkVal = 0;
-            if (con.getRhs() instanceof String) {
-                checkVal = Integer.parseInt((String) con.getRhs());
-            } else if (con.getRhs() instanceof Attribute) {
-                checkVal = ((Integer) tuple.dataAt(schema.indexOf((Attribute) con.getRhs()))).intValue();
-            } else {
-                System.out.println("Select: Malformed condition");
-            }
-            if (exprtype == Condition.LESSTHAN) {
-                return srcVal < checkVal;
-            } else if (exprtype == Condition.GREATERTHAN) {
-                return srcVal > checkVal;
-            } else if (exprtype == Condition.LTOE) {
-                return srcVal <= checkVal;
-            } else if (exprtype == Condition.GTOE) {
-                return srcVal >= checkVal;
-            } else if (exprtype == Condition.EQUAL) {
-                return srcVal == checkVal;
-            } else if (exprtype == Condition.NOTEQUAL) {
-                return srcVal != checkVal;
-            } else {
-                System.out.println("Select: Incorrect condition operator");
-            }
-        } else if (datatype == Attribute.STRING) {
-            String srcVal = (String) srcValue;
-            int flag = 0;
-            if (con.getRhs() instanceof String) {
-                flag = srcVal.compareTo((String) con.getRhs());
-            } else if (con.getRhs() instanceof Attribute) {
-                flag = srcVal.compareTo(((String) tuple.dataAt(schema.indexOf((Attribute) con.getRhs()))));
-            } else {
-                System.out.println("Select: Malformed condition");
-            }
-            if (exprtype == Condition.LESSTHAN) {
-                return flag < 0;
-            } else if (exprtype == Condition.GREATERTHAN) {
-                return flag > 0;
-            } else if (exprtype == Condition.LTOE) {
-                return flag <= 0;
-            } else if (exprtype == Condition.GTOE) {
-                return flag >= 0;
-            } else if (exprtype == Condition.EQUAL) {
-                return flag == 0;
-            } else if (exprtype == Condition.NOTEQUAL) {
-                return flag != 0;
-            } else {
-                System.out.println("Select: Incorrect condition operator");
-            }
-        } else if (datatype == Attribute.REAL) {
-            float srcVal = ((Float) srcValue).floatValue();
-            float checkVal = 0;
-            if (con.getRhs() instanceof String) {
-                checkVal = Float.parseFloat((String) con.getRhs());
-            } else if (con.getRhs() instanceof Attribute) {
-                checkVal = ((Float) tuple.dataAt(schema.indexOf((Attribute) con.getRhs()))).floatValue();
-            } else {
-                System.out.println("Select: Malformed condition");
-            }
-            if (exprtype == Condition.LESSTHAN) {
-                return srcVal < checkVal;
-            } else if (exprtype == Condition.GREATERTHAN) {
-                return srcVal > checkVal;
-            } else if (exprtype == Condition.LTOE) {
-                return srcVal <= checkVal;
-            } else if (exprtype == Condition.GTOE) {
-                return srcVal >= checkVal;
-            } else if (exprtype == Condition.EQUAL) {
-                return srcVal == checkVal;
-            } else if (exprtype == Condition.NOTEQUAL) {
-                return srcVal != checkVal;
-            } else {
-                System.out.println("Select: Incorrect condition operator");
+        for (int c : order) {
+            if (!predicates[c].test(tuple)) {
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Whether the comparison result (as returned by compareTo)
+     * * satisfies the given comparison type
+     **/
+    protected static boolean compare(int flag, int exprtype) {
+        if (exprtype == Condition.LESSTHAN) {
+            return flag < 0;
+        } else if (exprtype == Condition.GREATERTHAN) {
+            return flag > 0;
+        } else if (exprtype == Condition.LTOE) {
+            return flag <= 0;
+        } else if (exprtype == Condition.GTOE) {
+            return flag >= 0;
+        } else if (exprtype == Condition.EQUAL) {
+            return flag == 0;
+        } else if (exprtype == Condition.NOTEQUAL) {
+            return flag != 0;
+        } else {
+            System.out.println("Select: Incorrect condition operator");
+        }
         return false;
     }
 
     public Object clone() {
         Operator newbase = (Operator) base.clone();
-        Condition newcon = (Condition) con.clone();
-        Select newsel = new Select(newbase, newcon, optype);
+        ArrayList<Condition> newcons = new ArrayList<>();
+        for (Condition con : conditions) {
+            newcons.add((Condition) con.clone());
+        }
+        Select newsel = new Select(newbase, newcons, optype);
         newsel.setSchema((Schema) newbase.getSchema().clone());
         return newsel;
     }
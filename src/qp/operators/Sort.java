@@ -1,37 +1,76 @@
 package qp.operators;
 
-import java.io.*;
+import java.io.File;
+import java.util.ArrayDeque;
 import java.util.UUID;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import qp.optimizer.BufferManager;
 import qp.utils.Attribute;
 import qp.utils.Batch;
+import qp.utils.BufferPool;
+import qp.utils.LoserTree;
+import qp.utils.NormalizedKey;
+import qp.utils.RadixSort;
 import qp.utils.Tuple;
-import qp.utils.TupleInRun;
+import qp.utils.TupleReader;
+import qp.utils.TupleWriter;
 
 /**
  * This sort class adopts external sorting algorithm and provide sorting basis
  * for Distinct/OrderBy/SortMerge operator.
+ * Tuples are ordered by the normalized keys of their sort attributes (see NormalizedKey),
+ * each tuple is encoded once when it is read into memory and its key compared as bytes.
  */
 public class Sort extends Operator {
     private final Operator base;
     private final int numOfBuffers;
     private final ArrayList<Attribute> attributeArrayList;
+    // column index of each sort attribute, resolved once.
+    private final int[] sortIndices;
+    // whether each sort attribute is sorted in descending order.
+    private final boolean[] descending;
+    // byte comparable encoding of the sort attributes, compared instead of the tuples.
+    private final NormalizedKey keys;
     private final int batchSize;
-    private ObjectInputStream sortedStream;
+    private TupleReader sortedStream;
     private boolean eos = false;
     // UUID is used to randomly generate string for naming of the sorted/merged files.
     private final String uuid = UUID.randomUUID().toString();
     private ArrayList<String> nameList = new ArrayList<>();
+    // Page budget shared by the chunks and merge groups of all the sorts, and the pages of it left.
+    private static int mergeBudget;
+    private static Semaphore mergePages;
+    // Whether the runs are generated by replacement selection instead of sorting memory-sized chunks.
+    private static boolean replacementSelection = false;
 
     public Sort(Operator base, ArrayList<Attribute> attr, int numOfBuffers) {
+        this(base, attr, null, numOfBuffers);
+    }
+
+    /**
+     * @param base          operator whose output is sorted.
+     * @param attr          sort attributes, the first one is the most significant.
+     * @param descending    whether each sort attribute is sorted in descending order, null for all ascending.
+     * @param numOfBuffers  number of buffers available to the sort.
+     */
+    public Sort(Operator base, ArrayList<Attribute> attr, boolean[] descending, int numOfBuffers) {
         super(OpType.SORT);
         this.schema = base.schema;
         this.base = base;
         this.numOfBuffers = numOfBuffers;
         this.attributeArrayList = attr;
         this.batchSize = Batch.getPageSize() / schema.getTupleSize();
-
+        this.sortIndices = new int[attr.size()];
+        for (int i = 0; i < sortIndices.length; i++) {
+            sortIndices[i] = schema.indexOf(attr.get(i));
+        }
+        this.descending = descending != null ? descending : new boolean[sortIndices.length];
+        this.keys = new NormalizedKey(schema, sortIndices, this.descending);
     }
 
     @Override
@@ -40,25 +79,44 @@ public class Sort extends Operator {
             return false;
         }
 
-        int i = sortedRuns(); //generate sorted runs
+        int i = replacementSelection ? replacementRuns() : sortedRuns(); //generate sorted runs
         return merge(i, 1) == 1;
     }
 
     /**
      * This method load data from disk into buffer and utilise all the buffers to perform
      * an in-memory sort.
+     * The calling thread keeps reading the next chunk while the previous chunks are sorted
+     * on the threads of the shared pool (see Exchange) and written out, one after the
+     * other, by a writer thread. At most one chunk per thread of the pool plus one is
+     * in flight, and a chunk holds its pages of the budget shared with the merge groups
+     * from before it is read until its run is written, so the chunks in flight never take
+     * more pages than the budget. The runs are the same as those of a sequential run generation.
      * @return    The number of sorted run generated after the 0th pass.
      */
     private int sortedRuns() {
+        ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "sort writer " + uuid);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<CompletableFuture<Void>> pending = new ArrayDeque<>();
+        int maxPending = Exchange.getDegree() + 1;
+        Semaphore budget = getMergePages();
+        int pages = Math.min(numOfBuffers, mergeBudget);
+
         Batch inBatch = base.next();
         //runs denotes the number of files generated from the 0th pass
         int runs = 0;
         while (inBatch != null) {
-            ArrayList<Tuple> tuplesToSort = new ArrayList<>();
+            budget.acquireUninterruptibly(pages);
+            ArrayList<KeyedTuple> tuplesToSort = new ArrayList<>();
             int i = 0;
             // read the base relation batch by batch until all the available buffers have been taken up.
             while (i < numOfBuffers && inBatch != null) {
-                tuplesToSort.addAll(inBatch.getTuples());
+                for (Tuple tuple : inBatch.getTuples()) {
+                    tuplesToSort.add(new KeyedTuple(tuple));
+                }
                 // stop increment of buffer counter because there is no more buffer pages
                 // available. we now need to perform in-memory sort and
                 // write the sorted run into outStream.
@@ -67,28 +125,205 @@ public class Sort extends Operator {
                 }
                 i++;
             }
-            tuplesToSort.sort(this::compareTuples);
             String fileName = outFileName(0,runs);
             nameList.add(fileName);
-
-            try {
-                ObjectOutputStream stream = new ObjectOutputStream(new FileOutputStream(fileName));
-                for (Tuple tuple: tuplesToSort) {
-                    stream.writeObject(tuple);
-                }
-                stream.close();
-            } catch (IOException e) {
-                System.err.println("Cannot write the sorted file into disk because " + e.toString());
-                System.exit(1);
+            pending.add(CompletableFuture.runAsync(() -> sortChunk(tuplesToSort), Exchange.getPool())
+                    .thenRunAsync(() -> writeRun(fileName, tuplesToSort), writer)
+                    .whenComplete((result, failure) -> budget.release(pages)));
+            // wait for the oldest chunk before reading another one into memory
+            while (pending.size() >= maxPending) {
+                pending.poll().join();
             }
 
             inBatch = base.next();
             runs++;
 
         }
+        while (!pending.isEmpty()) {
+            pending.poll().join();
+        }
+        writer.shutdown();
+        return runs;
+    }
+
+    /**
+     * This method generates the sorted runs by replacement selection. A heap holds as many
+     * tuples as fit in the buffers, and its smallest tuple is repeatedly written to the current
+     * run and replaced by the next input tuple. An input tuple smaller than the tuple just written
+     * cannot join the current run any more and is kept in the heap for the next one.
+     * On random input the runs are about twice as long as the memory, on input that is already
+     * sorted there is only one run. Unlike sortedRuns, everything happens on the calling thread.
+     * @return    The number of sorted run generated after the 0th pass.
+     */
+    private int replacementRuns() {
+        int capacity = Math.max(1, numOfBuffers * batchSize);
+        KeyedTuple[] heap = new KeyedTuple[capacity];
+        // run each tuple of the heap belongs to, the heap is ordered by run first.
+        int[] heapRuns = new int[capacity];
+        int size = 0;
+
+        Batch inBatch = base.next();
+        int cursor = 0;
+        // fill the heap with the first tuples of the input, all of them belong to the first run.
+        while (inBatch != null && size < capacity) {
+            if (cursor == inBatch.size()) {
+                inBatch = base.next();
+                cursor = 0;
+                continue;
+            }
+            heap[size++] = new KeyedTuple(inBatch.get(cursor++));
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, heapRuns, size, i);
+        }
+
+        int runs = 0;
+        TupleWriter outStream = null;
+        while (size > 0) {
+            KeyedTuple top = heap[0];
+            // the smallest tuple belongs to the next run once the current run cannot grow any more.
+            if (outStream == null || heapRuns[0] != runs - 1) {
+                if (outStream != null) {
+                    outStream.close();
+                }
+                String fileName = outFileName(0, runs);
+                nameList.add(fileName);
+                outStream = new TupleWriter(fileName, schema, batchSize);
+                if (!outStream.open()) {
+                    System.err.println("Cannot write the sorted file into disk");
+                    System.exit(1);
+                }
+                runs++;
+            }
+            outStream.next(top.tuple);
+
+            while (inBatch != null && cursor == inBatch.size()) {
+                inBatch = base.next();
+                cursor = 0;
+            }
+            if (inBatch != null) {
+                KeyedTuple keyed = new KeyedTuple(inBatch.get(cursor++));
+                heap[0] = keyed;
+                heapRuns[0] = compareKeyed(keyed, top) >= 0 ? runs - 1 : runs;
+            } else {
+                // no more input, the heap shrinks.
+                size--;
+                heap[0] = heap[size];
+                heapRuns[0] = heapRuns[size];
+                heap[size] = null;
+            }
+            siftDown(heap, heapRuns, size, 0);
+        }
+        if (outStream != null) {
+            outStream.close();
+        }
         return runs;
     }
 
+    /**
+     * Moves the tuple at the given position of the heap down to its place.
+     * @param heap      tuples of the heap.
+     * @param heapRuns  run of each tuple of the heap.
+     * @param size      number of tuples in the heap.
+     * @param pos       position of the tuple to move down.
+     */
+    private void siftDown(KeyedTuple[] heap, int[] heapRuns, int size, int pos) {
+        KeyedTuple tuple = heap[pos];
+        int run = heapRuns[pos];
+        int child;
+        while ((child = 2 * pos + 1) < size) {
+            if (child + 1 < size && compareEntries(heap[child + 1], heapRuns[child + 1], heap[child], heapRuns[child]) < 0) {
+                child++;
+            }
+            if (compareEntries(heap[child], heapRuns[child], tuple, run) >= 0) {
+                break;
+            }
+            heap[pos] = heap[child];
+            heapRuns[pos] = heapRuns[child];
+            pos = child;
+        }
+        heap[pos] = tuple;
+        heapRuns[pos] = run;
+    }
+
+    /**
+     * Orders the entries of the replacement selection heap by run, then by the sort attributes.
+     */
+    private int compareEntries(KeyedTuple t1, int run1, KeyedTuple t2, int run2) {
+        if (run1 != run2) {
+            return Integer.compare(run1, run2);
+        }
+        return compareKeyed(t1, t2);
+    }
+
+    /**
+     * Sets whether the sorts generate their runs by replacement selection.
+     * @param enabled   true for replacement selection, false to sort memory-sized chunks.
+     */
+    public static void setReplacementSelection(boolean enabled) {
+        replacementSelection = enabled;
+    }
+
+    public static boolean isReplacementSelection() {
+        return replacementSelection;
+    }
+
+    /**
+     * Estimates the number of sorted runs of the 0th pass for the chosen run generation.
+     * Replacement selection is assumed to see input in random order, where its runs are twice
+     * as long as the memory.
+     * @param numOfPages    number of input pages.
+     * @param numOfBuffer   number of buffer pages available.
+     * @return              estimated number of sorted runs.
+     */
+    public static long estimateRuns(long numOfPages, long numOfBuffer) {
+        long runPages = replacementSelection ? 2 * numOfBuffer : numOfBuffer;
+        return (long) Math.ceil(1.0 * numOfPages / runPages);
+    }
+
+    /**
+     * Sorts a chunk of tuples in memory. When the normalized keys are exact and fit in their
+     * 8 byte prefixes, as for one or two INT/TIME/REAL sort attributes, the chunk is radix sorted
+     * on the prefixes without any comparison, otherwise it goes through the comparison sort.
+     * Both sorts are stable.
+     * @param tuples    tuples of the chunk, sorted in place.
+     */
+    private void sortChunk(ArrayList<KeyedTuple> tuples) {
+        if (!keys.isExact() || keys.getWidth() > 8) {
+            tuples.sort(this::compareKeyed);
+            return;
+        }
+        int n = tuples.size();
+        long[] prefixes = new long[n];
+        int[] rows = new int[n];
+        KeyedTuple[] unsorted = tuples.toArray(new KeyedTuple[n]);
+        for (int i = 0; i < n; i++) {
+            prefixes[i] = unsorted[i].prefix;
+            rows[i] = i;
+        }
+        RadixSort.sort(prefixes, rows, keys.getWidth());
+        for (int i = 0; i < n; i++) {
+            tuples.set(i, unsorted[rows[i]]);
+        }
+    }
+
+    /**
+     * Writes a sorted chunk out as a run.
+     * @param fileName  name of the run file.
+     * @param tuples    sorted tuples of the run.
+     */
+    private void writeRun(String fileName, ArrayList<KeyedTuple> tuples) {
+        TupleWriter stream = new TupleWriter(fileName, schema, batchSize);
+        if (!stream.open()) {
+            System.err.println("Cannot write the sorted file into disk");
+            System.exit(1);
+        }
+        for (KeyedTuple keyed: tuples) {
+            stream.next(keyed.tuple);
+        }
+        stream.close();
+    }
+
     /**
      * This method merge invokes recursive call on merging process(mergeIntermediate) until one file sorted file is generated.
      * @param fileNum   number of sorted runs to be merged
@@ -101,10 +336,9 @@ public class Sort extends Operator {
         // if the number of sorted file is <= 1, no merge required. Output the file.
         if (fileNumNow <= 1) {
             String fileName = outFileName(pass - 1, 0);
-            try {
-                sortedStream = new ObjectInputStream(new FileInputStream(fileName));
-            } catch (IOException e) {
-                System.err.printf("cannot write out the sorted file=%s because %s\n", fileName, e.toString());
+            sortedStream = new TupleReader(fileName, schema, batchSize);
+            if (!sortedStream.open()) {
+                System.err.printf("cannot write out the sorted file=%s\n", fileName);
             }
             return fileNumNow;
         }
@@ -118,140 +352,156 @@ public class Sort extends Operator {
      * This method is equivalent of one pass of merging process.
      * It merges existing sorted runs into shorter sorted runs. After one pass of merging,
      * there are fewer but longer sorted runs.
+     * The groups of runs of a pass are independent and merged at the same time on the shared
+     * pool (see Exchange), each into its own output run. A group holds one page per input run
+     * plus one output page, and is only started once its pages fit in the merge budget shared
+     * by all the sorts, so the budget alone decides how many groups run at once. Every group
+     * merges as many runs as the buffers allow, which keeps the number of passes the one the
+     * cost model expects (see PlanCost.getExternalSortCost).
      * @param preFileNum    number of sorted runs to be merged.
      * @param pass          number of pass so far
      * @return              number of merged files generated.
      */
     private int mergeIntermediate(int preFileNum, int pass) {
         int fileNum = 0;
+        ArrayList<CompletableFuture<Void>> groups = new ArrayList<>();
 
         for (int start = 0; start < preFileNum; start += numOfBuffers - 1) {
+            int first = start;
             int end = Math.min(start + numOfBuffers-1, preFileNum);
+            int outFileNum = fileNum;
+            nameList.add(outFileName(pass, outFileNum));
 
-            // At first we load data into memory as much as possible
-            // until all the buffers are fully loaded
-            Batch[] ins = new Batch[end - start];
-            boolean[] endFlag = new boolean[end - start];
-            ObjectInputStream[] inStreams = new ObjectInputStream[end - start];
-            for (int i = start; i < end; i++) {
-                String fileName = outFileName(pass - 1, i);
-                ObjectInputStream inStream = null;
+            Semaphore budget = getMergePages();
+            int pages = Math.min(end - start + 1, mergeBudget);
+            budget.acquireUninterruptibly(pages);
+            groups.add(CompletableFuture.runAsync(() -> {
                 try {
-                    inStream = new ObjectInputStream(new FileInputStream(fileName));
-                } catch (IOException e) {
-                    System.out.println("File cannot be input to stream");
-                    System.exit(1);
+                    mergeGroup(first, end, pass, outFileNum);
+                } finally {
+                    budget.release(pages);
                 }
+            }, Exchange.getPool()));
+            fileNum++;
+        }
+        for (CompletableFuture<Void> group : groups) {
+            group.join();
+        }
 
-                inStreams[i - start] = inStream;
-                Batch in = new Batch(batchSize);
-                while (!in.isFull()) {
-                    try {
-                        Tuple data = (Tuple) inStream.readObject();
-                        in.add(data);
-                    } catch (EOFException eof) {
-                        break;
-                    } catch (IOException e) {
-                        System.out.println("Cannot load data into memory due to " + e.toString());
-                        System.exit(1);
-                    } catch (ClassNotFoundException e) {
-                        System.out.println("Cannot load data into memory due to " + e.toString());
-                        System.exit(1);
-                    }
-                }
-                ins[i - start] = in;
-            }
+        return fileNum;
 
-            //put everything from buffer into pq.
-            PriorityQueue<TupleInRun> pq = new PriorityQueue<>(batchSize, (t1, t2) -> compareTuples(t1.tuple, t2.tuple));
-            // name the output merged file with current pass number and file number;
-            // create the corresponding outStream for continuous data flow;
-            String outFileName = outFileName(pass, fileNum);
-            nameList.add(outFileName);
-            ObjectOutputStream outStream = null;
-            try {
-                outStream = new ObjectOutputStream(new FileOutputStream(outFileName));
-            } catch (IOException e) {
-                System.err.printf("cannot output from pq to outStream (%s) due to %s\n", outFileName, e.toString());
-            }
-            // put the first tuple in each buffer(in) into the pq so that we can find the
-            // min of the remaining tuples each time.
-            for (int idx = 0; idx < end - start; idx++) {
-                Batch in = ins[idx];
-                if (in == null || in.isEmpty()) {
-                    endFlag[idx] = true;
-                    continue;
-                }
-                Tuple tpl = in.get(0);
-                pq.add(new TupleInRun(tpl, idx, 0));
+    }
+
+    /**
+     * Sets the number of pages the chunks and merge groups in flight at the same time may hold,
+     * 0 for the number of buffers given to the query.
+     * @param pages     page budget of the merge groups.
+     */
+    public static synchronized void setMergeBudget(int pages) {
+        mergeBudget = pages > 0 ? pages : Math.max(1, BufferManager.getNumBuffer());
+        mergePages = new Semaphore(mergeBudget);
+    }
+
+    private static synchronized Semaphore getMergePages() {
+        if (mergePages == null) {
+            setMergeBudget(0);
+        }
+        return mergePages;
+    }
+
+    /**
+     * This method merges one group of sorted runs of the previous pass into one run.
+     * @param start     first run of the group.
+     * @param end       run after the last run of the group.
+     * @param pass      number of pass so far
+     * @param fileNum   number of the output run in this pass.
+     */
+    private void mergeGroup(int start, int end, int pass, int fileNum) {
+        // At first we load data into memory as much as possible
+        // until all the buffers are fully loaded
+        Batch[] ins = new Batch[end - start];
+        int[] cursors = new int[end - start];
+        // key of the current tuple of each run, encoded again whenever its cursor moves.
+        byte[][] runKeys = new byte[end - start][keys.getWidth()];
+        long[] runPrefixes = new long[end - start];
+        TupleReader[] inStreams = new TupleReader[end - start];
+        for (int i = start; i < end; i++) {
+            String fileName = outFileName(pass - 1, i);
+            TupleReader inStream = new TupleReader(fileName, schema, batchSize);
+            if (!inStream.open()) {
+                System.out.println("File cannot be input to stream");
+                System.exit(1);
             }
-            //now there are (n-1) tuples in the qp and you can start the loop
-            // to continuously output the smallest tuple.
-            while (!pq.isEmpty()) {
-                TupleInRun tpl = pq.poll();
-                try {
-                    outStream.writeObject(tpl.tuple);
-                } catch (IOException e) {
-                    System.err.printf("the min tuple cannot be put into outStream due to %s\n", e.toString());
-                }
-                // now we look for the replacement of the tuple
-                // that have been popped in the above line. This is done by finding
-                // where the tuples comes from. if the buffer it comes from has remaining tuple left,
-                // put it into pq,
-                int nextInID = tpl.runID;
-                int nextIdx = tpl.tupleID + 1;
-                // if the tuple it comes from is already empty, then go to its corresponding inStream and
-                // load another batch of data until the buffer page is full again.
-                if (nextIdx == batchSize) {
-                    Batch in = new Batch(batchSize);
-                    while (!in.isFull()) {
-                        try {
-                            Tuple data = (Tuple) inStreams[nextInID].readObject();
-                            in.add(data);
-                        } catch (EOFException eof) {
-                            break;
-                        } catch (ClassNotFoundException e) {
-                            System.err.printf("cannot load the data into buffer due to %s\n", e.toString());
-                        } catch (IOException e) {
-                            System.err.printf("cannot load the data into buffer due to %s\n", e.toString());
-                        }
-                    }
-                    //when the buffer is fully loaded, assign it to our buffer pool
-                    ins[nextInID] = in;
-                    // Resets the index for that input buffer to be 0.
-                    nextIdx = 0;
-                }
-                // now we have alr locate the next tuple to put into pq
-                Batch in = ins[nextInID];
-                // This is handle the case where the last inStream is sometimes shorter
-                // then all the previous stream, Hence, when the last few data is load into buffer,
-                // they do not occupy the buffer fully. so size < index;
-                if (in == null || in.size() <= nextIdx) {
-                    endFlag[nextInID] = true;
-                    continue;
-                }
-                Tuple nextTuple = in.get(nextIdx);
-                pq.add(new TupleInRun(nextTuple, nextInID, nextIdx));
 
+            inStreams[i - start] = inStream;
+            ins[i - start] = inStream.nextBatch();
+            encodeCurrent(ins, cursors, runKeys, runPrefixes, i - start);
+        }
+
+        // name the output merged file with current pass number and file number;
+        // create the corresponding outStream for continuous data flow;
+        String outFileName = outFileName(pass, fileNum);
+        TupleWriter outStream = new TupleWriter(outFileName, schema, batchSize);
+        if (!outStream.open()) {
+            System.err.printf("cannot output from pq to outStream (%s)\n", outFileName);
+        }
+        // the tree plays the current tuples of the input buffers against each other;
+        // a buffer that is empty or fully consumed is done.
+        LoserTree tree = new LoserTree(end - start, new LoserTree.Runs() {
+            public boolean isDone(int run) {
+                return ins[run] == null || cursors[run] >= ins[run].size();
             }
 
-            for (ObjectInputStream inStream : inStreams) {
-                try {
-                    inStream.close();
-                } catch (IOException e) {
-                    System.err.printf("cannot close the inStream in start=%d, end = %d due to %s\n", start, end, e.toString());
-                }
+            public int compare(int run1, int run2) {
+                return compareKeys(runPrefixes[run1], runKeys[run1], ins[run1].get(cursors[run1]),
+                        runPrefixes[run2], runKeys[run2], ins[run2].get(cursors[run2]));
             }
-            try {
-                outStream.close();
-            } catch (IOException e) {
-                System.err.printf("cannot close the outStream in start=%d, end = %d due to %s\n", start, end, e.toString());
+        });
+        // continuously output the smallest tuple until all the runs are done.
+        while (!tree.isDone()) {
+            int run = tree.winner();
+            outStream.next(ins[run].get(cursors[run]));
+            // when the buffer the tuple comes from is consumed, load the next batch of its run.
+            if (++cursors[run] == ins[run].size()) {
+                ins[run] = inStreams[run].nextBatch();
+                cursors[run] = 0;
             }
-            fileNum++;
+            encodeCurrent(ins, cursors, runKeys, runPrefixes, run);
+            tree.replay();
         }
 
-        return fileNum;
+        for (TupleReader inStream : inStreams) {
+            if (!inStream.close()) {
+                System.err.printf("cannot close the inStream in start=%d, end = %d\n", start, end);
+            }
+        }
+        outStream.close();
+    }
+
+    /**
+     * Encodes the key of the current tuple of a run being merged, if it has one.
+     */
+    private void encodeCurrent(Batch[] ins, int[] cursors, byte[][] runKeys, long[] runPrefixes, int run) {
+        if (ins[run] != null && cursors[run] < ins[run].size()) {
+            keys.encode(ins[run].get(cursors[run]), runKeys[run]);
+            runPrefixes[run] = NormalizedKey.prefix(runKeys[run]);
+        }
+    }
+
+    /**
+     * Compares two tuples through their normalized keys, the tuples themselves are only
+     * compared when the keys tie without being exact.
+     */
+    private int compareKeys(long prefix1, byte[] key1, Tuple t1, long prefix2, byte[] key2, Tuple t2) {
+        int res = NormalizedKey.compare(prefix1, key1, prefix2, key2);
+        if (res == 0 && !keys.isExact()) {
+            res = compareTuples(t1, t2);
+        }
+        return res;
+    }
 
+    private int compareKeyed(KeyedTuple t1, KeyedTuple t2) {
+        return compareKeys(t1.prefix, t1.key, t1.tuple, t2.prefix, t2.key, t2.tuple);
     }
 
     /**
@@ -263,11 +513,10 @@ public class Sort extends Operator {
     private int compareTuples(Tuple t1, Tuple t2) {
         int idx = 0;
         // check on each sort index, if one of them is not 0, return the ordering immediately.
-        while (idx < attributeArrayList.size()) {
-            int sortIndex = schema.indexOf(attributeArrayList.get(idx));
-            int res = Tuple.compareTuples(t1, t2, sortIndex);
+        while (idx < sortIndices.length) {
+            int res = Tuple.compareTuples(t1, t2, sortIndices[idx]);
             if (res != 0) {
-                return res;
+                return descending[idx] ? -res : res;
             }
             idx++;
         }
@@ -284,6 +533,21 @@ public class Sort extends Operator {
         return "Sorted" + uuid + "_" + passID + "_" + runID;
     }
 
+    /**
+     * A tuple held in memory with its normalized key.
+     */
+    private class KeyedTuple {
+        final Tuple tuple;
+        final byte[] key;
+        final long prefix;
+
+        KeyedTuple(Tuple tuple) {
+            this.tuple = tuple;
+            this.key = keys.encode(tuple);
+            this.prefix = NormalizedKey.prefix(key);
+        }
+    }
+
     @Override
     public Batch next() {
         if (eos) {
@@ -293,19 +557,12 @@ public class Sort extends Operator {
 
         Batch out = new Batch(batchSize);
         while (!out.isFull()) {
-            try {
-                Tuple data = (Tuple) sortedStream.readObject();
-                out.add(data);
-            } catch (ClassNotFoundException cnf) {
-                System.err.printf("Cannot read from sortedrun due to %s\n", cnf.toString());
-                System.exit(1);
-            } catch (EOFException EOF) {
+            Tuple data = sortedStream.next();
+            if (data == null) {
                 eos = true;
                 return out;
-            } catch (IOException e) {
-                System.err.printf("Cannot read from sortedrun due to %s\n", e.toString());
-                System.exit(1);
             }
+            out.add(data);
         }
         return out;
     }
@@ -313,16 +570,15 @@ public class Sort extends Operator {
     @Override
     public boolean close() {
         super.close();
-        try{
-            sortedStream.close();
-        } catch (IOException e) {
-            System.err.println("Cannot close sortedStream " + e.toString());
+        if (!sortedStream.close()) {
+            System.err.println("Cannot close sortedStream");
             return false;
         }
         // To delete all the sorted files generated.
         for (String name : nameList) {
             File f = new File(name);
             f.delete();
+            BufferPool.invalidate(name);
         }
         return true;
     }
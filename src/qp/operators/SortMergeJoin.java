@@ -3,6 +3,7 @@ package qp.operators;
 import qp.utils.Attribute;
 import qp.utils.Batch;
 import qp.utils.Condition;
+import qp.utils.NormalizedKey;
 import qp.utils.Tuple;
 
 import java.util.ArrayList;
@@ -73,6 +74,15 @@ public class SortMergeJoin extends Join {
 	// The next right tuple from current right tuple
 	Tuple nextTuple = null;
 
+	// Normalized keys of the join attributes of left and right tuples
+	NormalizedKey leftKeys;
+	NormalizedKey rightKeys;
+	// The keys of the left and right tuples last compared, and those tuples
+	byte[] leftKey;
+	byte[] rightKey;
+	Tuple leftKeyed;
+	Tuple rightKeyed;
+
 	/**
 	 * Initialise a new join operator using Sort-Merge Join algorith
 	 * @param jn jn is the base join operator
@@ -105,6 +115,12 @@ public class SortMergeJoin extends Join {
 			leftIndices.add(left.getSchema().indexOf(leftattr));
 			rightIndices.add(right.getSchema().indexOf(rightattr));
 		}
+		leftKeys = new NormalizedKey(left.getSchema(), toArray(leftIndices), null);
+		rightKeys = new NormalizedKey(right.getSchema(), toArray(rightIndices), null);
+		leftKey = new byte[leftKeys.getWidth()];
+		rightKey = new byte[rightKeys.getWidth()];
+		leftKeyed = null;
+		rightKeyed = null;
 
 		// Sort both left and right table
 		sortedLeft = new Sort(left, leftAttributes, numBuff);
@@ -156,7 +172,7 @@ public class SortMergeJoin extends Join {
 		// The output page
 		Batch outBatch = new Batch(batchSize);
 		while (!outBatch.isFull()) {
-			int compareResult = Tuple.compareTuples(leftTuple, rightTuple, leftIndices, rightIndices);
+			int compareResult = compareLeftRight();
 			if (compareResult == 0) { // left and right tuples are equal
 				outBatch.add(leftTuple.joinWith(rightTuple)); // add join result into outBatch, continues to next comparison
 				if (partitionEosr < rightPartition.size() - 1) {// read next tuple from right partition
@@ -274,6 +290,36 @@ public class SortMergeJoin extends Join {
 		return partition;
 	}
 
+	/**
+	 * Compare the join attributes of the current left and right tuples through their normalized keys.
+	 * A tuple is only encoded when it differs from the one compared last, and the tuples themselves are
+	 * only compared when the keys tie without being exact
+	 * @return the ordering of the left tuple relative to the right tuple
+	 */
+	private int compareLeftRight() {
+		if (leftKeyed != leftTuple) {
+			leftKeys.encode(leftTuple, leftKey);
+			leftKeyed = leftTuple;
+		}
+		if (rightKeyed != rightTuple) {
+			rightKeys.encode(rightTuple, rightKey);
+			rightKeyed = rightTuple;
+		}
+		int compareResult = NormalizedKey.compare(leftKey, rightKey);
+		if (compareResult == 0 && !(leftKeys.isExact() && rightKeys.isExact())) {
+			compareResult = Tuple.compareTuples(leftTuple, rightTuple, leftIndices, rightIndices);
+		}
+		return compareResult;
+	}
+
+	private static int[] toArray(ArrayList<Integer> indices) {
+		int[] array = new int[indices.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = indices.get(i);
+		}
+		return array;
+	}
+
 	/**
 	 * To check wether a partition size has exceeded the size of buffers available
 	 * @param partition
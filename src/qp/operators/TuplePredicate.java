@@ -0,0 +1,138 @@
+/**
+ * Selection condition compiled for one schema
+ **/
+
+package qp.operators;
+
+import qp.utils.Attribute;
+import qp.utils.Condition;
+import qp.utils.Schema;
+import qp.utils.Tuple;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * compile resolves the column indexes, the type, the literal and the comparison
+ * of a condition once, and returns an evaluator specialized for them, so that
+ * testing a tuple neither looks up the schema, parses the literal nor branches
+ * on the comparison, and allocates nothing.
+ */
+public interface TuplePredicate {
+
+    boolean test(Tuple tuple);
+
+    /**
+     * Evaluator of the condition on tuples of the given schema. STRING values
+     * * arriving as dictionary codes are compared to a literal through litBound,
+     * * the smallest code not below the literal, and litFound, whether the literal
+     * * is in the dictionary
+     **/
+    static TuplePredicate compile(Condition con, Schema schema, int litBound, boolean litFound) {
+        int index = schema.indexOf(con.getLhs());
+        int datatype = schema.typeOf(con.getLhs());
+        int exprtype = con.getExprType();
+        Object rhs = con.getRhs();
+        if (!(rhs instanceof String) && !(rhs instanceof Attribute)) {
+            System.out.println("Select: Malformed condition");
+            return tuple -> false;
+        }
+        int other = rhs instanceof Attribute ? schema.indexOf((Attribute) rhs) : -1;
+
+        if (datatype == Attribute.INT) {
+            if (other < 0) {
+                return ofInt(index, exprtype, Integer.parseInt((String) rhs));
+            }
+            return ofFlag(tuple -> Integer.compare((Integer) tuple.dataAt(index), (Integer) tuple.dataAt(other)), exprtype);
+        } else if (datatype == Attribute.REAL) {
+            if (other < 0) {
+                return ofFloat(index, exprtype, Float.parseFloat((String) rhs));
+            }
+            /** Compared like the primitive values, so that 0.0 == -0.0 **/
+            return ofFlag(tuple -> {
+                float src = (Float) tuple.dataAt(index);
+                float check = (Float) tuple.dataAt(other);
+                return src < check ? -1 : (src == check ? 0 : 1);
+            }, exprtype);
+        } else if (datatype == Attribute.STRING) {
+            TuplePredicate strings;
+            TuplePredicate codes;
+            if (other < 0) {
+                String literal = (String) rhs;
+                strings = ofFlag(tuple -> ((String) tuple.dataAt(index)).compareTo(literal), exprtype);
+                codes = ofFlag(tuple -> {
+                    int code = (Integer) tuple.dataAt(index);
+                    return code < litBound ? -1 : (code == litBound && litFound ? 0 : 1);
+                }, exprtype);
+            } else {
+                strings = ofFlag(tuple -> ((String) tuple.dataAt(index)).compareTo((String) tuple.dataAt(other)), exprtype);
+                codes = ofFlag(tuple -> Integer.compare((Integer) tuple.dataAt(index), (Integer) tuple.dataAt(other)), exprtype);
+            }
+            /** Whether the values arrive as codes depends on the scan below **/
+            return tuple -> tuple.dataAt(index) instanceof Integer ? codes.test(tuple) : strings.test(tuple);
+        }
+        return tuple -> false;
+    }
+
+    static TuplePredicate ofInt(int index, int exprtype, int literal) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return tuple -> (Integer) tuple.dataAt(index) < literal;
+            case Condition.GREATERTHAN:
+                return tuple -> (Integer) tuple.dataAt(index) > literal;
+            case Condition.LTOE:
+                return tuple -> (Integer) tuple.dataAt(index) <= literal;
+            case Condition.GTOE:
+                return tuple -> (Integer) tuple.dataAt(index) >= literal;
+            case Condition.EQUAL:
+                return tuple -> (Integer) tuple.dataAt(index) == literal;
+            case Condition.NOTEQUAL:
+                return tuple -> (Integer) tuple.dataAt(index) != literal;
+            default:
+                System.out.println("Select: Incorrect condition operator");
+                return tuple -> false;
+        }
+    }
+
+    static TuplePredicate ofFloat(int index, int exprtype, float literal) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return tuple -> (Float) tuple.dataAt(index) < literal;
+            case Condition.GREATERTHAN:
+                return tuple -> (Float) tuple.dataAt(index) > literal;
+            case Condition.LTOE:
+                return tuple -> (Float) tuple.dataAt(index) <= literal;
+            case Condition.GTOE:
+                return tuple -> (Float) tuple.dataAt(index) >= literal;
+            case Condition.EQUAL:
+                return tuple -> (Float) tuple.dataAt(index) == literal;
+            case Condition.NOTEQUAL:
+                return tuple -> (Float) tuple.dataAt(index) != literal;
+            default:
+                System.out.println("Select: Incorrect condition operator");
+                return tuple -> false;
+        }
+    }
+
+    /**
+     * Evaluator testing the result of a comparison (as returned by compareTo)
+     **/
+    static TuplePredicate ofFlag(ToIntFunction<Tuple> comparison, int exprtype) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return tuple -> comparison.applyAsInt(tuple) < 0;
+            case Condition.GREATERTHAN:
+                return tuple -> comparison.applyAsInt(tuple) > 0;
+            case Condition.LTOE:
+                return tuple -> comparison.applyAsInt(tuple) <= 0;
+            case Condition.GTOE:
+                return tuple -> comparison.applyAsInt(tuple) >= 0;
+            case Condition.EQUAL:
+                return tuple -> comparison.applyAsInt(tuple) == 0;
+            case Condition.NOTEQUAL:
+                return tuple -> comparison.applyAsInt(tuple) != 0;
+            default:
+                System.out.println("Select: Incorrect condition operator");
+                return tuple -> false;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Restricts the scans of the execution plan to the columns the plan actually needs
+ **/
+
+package qp.optimizer;
+
+import qp.operators.*;
+import qp.utils.Attribute;
+import qp.utils.Condition;
+import qp.utils.Schema;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+public class ColumnPruner {
+
+    /**
+     * Replaces the scans of tables stored in the columnar layout by
+     * * column scans over the attributes required by the operators above,
+     * * and recomputes the schemas that change as a result
+     **/
+    public static Operator prune(Operator root) {
+        return prune(root, null);
+    }
+
+    /**
+     * needed is the set of attributes required from node by its parent,
+     * * null if all the attributes of node are required
+     **/
+    private static Operator prune(Operator node, HashSet<Attribute> needed) {
+        if (node.getOpType() == OpType.PROJECT) {
+            Project project = (Project) node;
+            HashSet<Attribute> required = new HashSet<>();
+            for (Attribute attr : project.getProjAttr()) {
+                required.add(attr.getBaseAttribute());
+            }
+            project.setBase(prune(project.getBase(), required));
+            return node;
+        } else if (node.getOpType() == OpType.SELECT) {
+            Select select = (Select) node;
+            HashSet<Attribute> required = needed;
+            for (Condition con : select.getConditions()) {
+                required = withCondition(required, con);
+            }
+            select.setBase(prune(select.getBase(), required));
+            select.setSchema(select.getBase().getSchema());
+            return node;
+        } else if (node.getOpType() == OpType.JOIN) {
+            Join join = (Join) node;
+            HashSet<Attribute> required = needed;
+            for (Condition con : join.getConditionList()) {
+                required = withCondition(required, con);
+            }
+            join.setLeft(prune(join.getLeft(), required));
+            /** The inner table of an index nested join is probed through its full rows **/
+            join.setRight(prune(join.getRight(), join instanceof IndexNestedJoin ? null : required));
+            join.setSchema(join.getLeft().getSchema().joinWith(join.getRight().getSchema()));
+            return node;
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            Distinct distinct = (Distinct) node;
+            distinct.setBase(prune(distinct.getBase(), needed));
+            distinct.setSchema(distinct.getBase().getSchema());
+            return node;
+        } else if (node.getOpType() == OpType.ORDERBY) {
+            OrderBy orderBy = (OrderBy) node;
+            orderBy.setBase(prune(orderBy.getBase(), needed));
+            orderBy.setSchema(orderBy.getBase().getSchema());
+            return node;
+        } else if (node.getOpType() == OpType.SCAN) {
+            return pruneScan((Scan) node, needed);
+        }
+        return node;
+    }
+
+    /**
+     * Adds the attributes of the condition to the required set, unless all are required anyway
+     **/
+    private static HashSet<Attribute> withCondition(HashSet<Attribute> needed, Condition con) {
+        if (needed == null) {
+            return null;
+        }
+        HashSet<Attribute> required = new HashSet<>(needed);
+        required.add(con.getLhs());
+        if (con.getRhs() instanceof Attribute) {
+            required.add((Attribute) con.getRhs());
+        }
+        return required;
+    }
+
+    private static Operator pruneScan(Scan scan, HashSet<Attribute> needed) {
+        if (needed == null || scan instanceof ColumnScan) {
+            return scan;
+        }
+        Schema schema = scan.getSchema();
+        HashSet<Attribute> read = needed;
+        for (Condition con : scan.getConditions()) {
+            read = withCondition(read, con);
+        }
+        ArrayList<Attribute> columns = new ArrayList<>();
+        ArrayList<Attribute> readcolumns = new ArrayList<>();
+        for (Attribute attr : schema.getAttList()) {
+            if (needed.contains(attr)) {
+                columns.add(attr);
+            }
+            if (read.contains(attr)) {
+                readcolumns.add(attr);
+            }
+        }
+        if (!readcolumns.isEmpty() && readcolumns.size() < schema.getNumCols() && ColumnScan.isApplicable(readcolumns)) {
+            ColumnScan columnScan = new ColumnScan(scan.getTabName(), scan.getOpType(), schema, readcolumns);
+            columnScan.setEncodedColumns(scan.getEncodedColumns());
+            if (scan.getConditions().isEmpty()) {
+                return columnScan;
+            }
+            /** The column files are read value by value, the pushed conditions go back into a Select **/
+            Select select = new Select(columnScan, scan.getConditions(), OpType.SELECT);
+            select.setSchema(columnScan.getSchema());
+            return select;
+        }
+        /** A scan of the row layout still reads whole rows, but only decodes the needed columns **/
+        if (!columns.isEmpty() && columns.size() < schema.getNumCols()) {
+            scan.setProjection(columns);
+        }
+        return scan;
+    }
+}
@@ -7,13 +7,16 @@ package qp.optimizer;
 
 import qp.operators.*;
 import qp.utils.Attribute;
+import qp.utils.BTreeIndex;
 import qp.utils.Batch;
 import qp.utils.Condition;
 import qp.utils.Schema;
+import qp.utils.ZoneMap;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.StringTokenizer;
 
@@ -76,10 +79,14 @@ public class PlanCost {
             return getStatistics((Project) node);
         } else if (node.getOpType() == OpType.SCAN) {
             return getStatistics((Scan) node);
+        } else if (node.getOpType() == OpType.INDEXSCAN) {
+            return getStatistics((IndexScan) node);
         }else if (node.getOpType() == OpType.DISTINCT) {
             return getStatistics((Distinct) node);
         }else if (node.getOpType() == OpType.ORDERBY) {
             return getStatistics((OrderBy) node);
+        } else if (node.getOpType() == OpType.EXCHANGE) {
+            return getStatistics((Exchange) node);
         }
         System.out.println("operator is not supported");
         isFeasible = false;
@@ -94,12 +101,22 @@ public class PlanCost {
         return calculateCost(node.getBase());
     }
 
+    /**
+     * The workers of an exchange read the same pages between them
+     **/
+    protected long getStatistics(Exchange node) {
+        return calculateCost(node.getBase());
+    }
+
     /** calculates the costs of a orderby operation; the cost should be the same as a external sort
      * @param node the orderby operation
      * @return the number of output tuples
      */
     protected long getStatistics(OrderBy node) {
-        long outputTuples = getNumTuples();
+        long outputTuples = calculateCost(node.getBase());
+        if (!isFeasible) {
+            return 0;
+        }
         int numOfTuplesInOnePage = Batch.getPageSize() / node.getBase().getSchema().getTupleSize();
         long numOfPages = outputTuples / numOfTuplesInOnePage;
         long numOfBuffer = BufferManager.getNumBuffer();
@@ -113,6 +130,7 @@ public class PlanCost {
      **/
     protected long getStatistics(Join node) {
         long lefttuples = calculateCost(node.getLeft());
+        long leftcost = cost;
         long righttuples = calculateCost(node.getRight());
 
         if (!isFeasible) {
@@ -133,6 +151,12 @@ public class PlanCost {
         long leftpages = (long) Math.ceil(((double) lefttuples) / (double) leftcapacity);
         long rightpages = (long) Math.ceil(((double) righttuples) / (double) rightcapacity);
 
+        /** An index nested join probes the inner table for every left tuple **/
+        long probecost = 0;
+        if (node.getJoinType() == JoinType.INDEXNESTED) {
+            probecost = getProbeCost(node);
+        }
+
         double tuples = (double) lefttuples * righttuples;
         for (Condition con : node.getConditionList()) {
             Attribute leftjoinAttr = con.getLhs();
@@ -164,8 +188,18 @@ public class PlanCost {
             case JoinType.BLOCKNESTED:
                 joincost = (int) (leftpages + Math.ceil((float)leftpages/(numbuff - 2)) * rightpages);
                 break;
+            case JoinType.INDEXNESTED:
+                /** Without an index on the inner table the join cannot run **/
+                if (probecost < 0) {
+                    isFeasible = false;
+                    return 0;
+                }
+                /** The inner table is not scanned **/
+                cost = leftcost;
+                joincost = lefttuples * probecost;
+                break;
             case JoinType.HASHJOIN:
-                joincost = 3 * (leftpages + rightpages);
+                joincost = getHashJoinCost(leftpages, rightpages, numbuff);
                 break;
             case JoinType.SORTMERGE:
                 // components of cost = leftcost + rightcost + mergingcost
@@ -184,6 +218,45 @@ public class PlanCost {
         return outtuples;
     }
 
+    /**
+     * Cost of a hybrid hash join building on the left input. A left input fitting
+     * * in numbuff - 2 pages is joined in memory, otherwise only the fraction of both
+     * * inputs hashed to the resident partition is, if that partition fits into its
+     * * pages. The rest is written and read once per partitioning pass
+     **/
+    protected long getHashJoinCost(long leftpages, long rightpages, long numbuff) {
+        long memory = Math.max(1, numbuff - 2);
+        if (leftpages <= memory) {
+            return leftpages + rightpages;
+        }
+        int parts = HashJoin.getFirstPartitions(numbuff);
+        double resident = (double) leftpages / parts <= HashJoin.getResidentPages(numbuff) ? 1.0 / parts : 0;
+
+        /** Spilled partitions whose smaller side does not fit are partitioned again **/
+        long passes = 1;
+        double partpages = (double) Math.min(leftpages, rightpages) / parts;
+        while (partpages > memory && passes <= HashJoin.MAXLEVEL) {
+            partpages /= Math.max(2, numbuff - 1);
+            passes++;
+        }
+        return (long) Math.ceil((leftpages + rightpages) * (1 + 2 * (1 - resident) * passes));
+    }
+
+    /**
+     * Pages read by one probe of an index nested join: one page per level of the
+     * * index and one data page per match of an average key, as the index is not clustered.
+     * * Returns -1 if the inner table has no index on the join attribute
+     **/
+    protected long getProbeCost(Join node) {
+        Condition con = IndexNestedJoin.getProbeCondition(node);
+        if (con == null) {
+            return -1;
+        }
+        BTreeIndex index = BTreeIndex.load((Attribute) con.getRhs());
+        long matches = (long) Math.ceil((double) index.getNumEntries() / Math.max(1, index.getNumKeys()));
+        return index.getHeight() + matches;
+    }
+
     /**
      * Find number of incoming tuples, Using the selectivity find # of output tuples
      * * And statistics about the attributes
@@ -196,8 +269,19 @@ public class PlanCost {
             return Long.MAX_VALUE;
         }
 
-        Condition con = node.getCondition();
+        /** The conditions of a fused Select apply one after the other **/
         Schema schema = node.getSchema();
+        for (Condition con : node.getConditions()) {
+            intuples = getStatistics(node, con, schema, intuples);
+        }
+        return intuples;
+    }
+
+    /**
+     * Number of tuples out of the given number satisfying one condition
+     * * of the Select (or of the Scan the condition was pushed into)
+     **/
+    protected long getStatistics(Operator node, Condition con, Schema schema, long intuples) {
         Attribute attr = con.getLhs();
         int index = schema.indexOf(attr);
         Attribute fullattr = schema.getAttribute(index);
@@ -218,6 +302,12 @@ public class PlanCost {
             outtuples = (long) Math.ceil(0.5 * intuples);
         }
 
+        /** The zone map bounds the fraction of the tuples that can qualify **/
+        double fraction = getZoneFraction(node, con);
+        if (fraction < 1) {
+            outtuples = Math.min(outtuples, (long) Math.ceil(fraction * intuples));
+        }
+
         /** Modify the number of distinct values of each attribute
          ** Assuming the values are distributed uniformly along entire
          ** relation
@@ -231,6 +321,28 @@ public class PlanCost {
         return outtuples;
     }
 
+    /**
+     * Fraction of the pages of the base table of the selection that
+     * * may hold tuples satisfying the condition, according to the zone map
+     **/
+    protected double getZoneFraction(Operator node, Condition con) {
+        Operator base = node;
+        while (base.getOpType() == OpType.SELECT) {
+            base = ((Select) base).getBase();
+        }
+        if (base.getOpType() != OpType.SCAN && base.getOpType() != OpType.INDEXSCAN) {
+            return 1;
+        }
+        Scan scan = (Scan) base;
+        ZoneMap zoneMap = ZoneMap.load(scan.getTabName());
+        if (zoneMap == null) {
+            return 1;
+        }
+        ArrayList<Condition> conditions = new ArrayList<>();
+        conditions.add(con);
+        return zoneMap.getFraction(scan.getTableSchema(), conditions);
+    }
+
     /**
      * The statistics file <tablename>.stat to find the statistics
      * * about that table;
@@ -238,9 +350,69 @@ public class PlanCost {
      * * number of distinct values of each attribute
      **/
     protected long getStatistics(Scan node) {
+        long numtuples = readStatistics(node);
+
+        /** Number of tuples per page, only the columns scanned are read from a columnar table **/
+        Schema stored = node instanceof ColumnScan ? node.getSchema() : node.getTableSchema();
+        long tuplesize = stored.getTupleSize();
+        long pagesize = Math.max(Batch.getPageSize() / tuplesize, 1);
+        long numpages = (long) Math.ceil((double) numtuples / (double) pagesize);
+
+        /** Pages skipped because of the zone map are not read **/
+        ZoneMap zoneMap = ZoneMap.load(node.getTabName());
+        if (zoneMap != null && !node.getZoneConditions().isEmpty()) {
+            numpages = (long) Math.ceil(numpages * zoneMap.getFraction(node.getTableSchema(), node.getZoneConditions()));
+        }
+
+        cost = cost + numpages;
+
+        /** The conditions pushed into the scan are checked while the pages are decoded **/
+        for (Condition con : node.getConditions()) {
+            numtuples = getStatistics(node, con, node.getTableSchema(), numtuples);
+        }
+        return numtuples;
+    }
+
+    /**
+     * An index scan descends the tree once (one page per level), reads the leaves
+     * * holding the qualifying entries and then every data page holding a
+     * * qualifying tuple once. The Select above still sees the whole table
+     **/
+    protected long getStatistics(IndexScan node) {
+        Condition con = node.getIndexCondition();
+        BTreeIndex index = BTreeIndex.load(con.getLhs());
+        if (index == null) {
+            return getStatistics((Scan) node);
+        }
+        long numtuples = readStatistics(node);
+
+        long tuplesize = node.getSchema().getTupleSize();
+        long pagesize = Math.max(Batch.getPageSize() / tuplesize, 1);
+        long numpages = (long) Math.ceil((double) numtuples / (double) pagesize);
+
+        /** Selectivity of the condition, from the root of the index and the number of distinct values **/
+        Schema schema = node.getTableSchema();
+        Attribute attr = schema.getAttribute(schema.indexOf(con.getLhs()));
+        double selectivity = index.estimateFraction(con);
+        if (con.getExprType() == Condition.EQUAL) {
+            selectivity = Math.min(selectivity, 1.0 / Math.max(1, ht.get(attr)));
+        }
+
+        long matching = (long) Math.ceil(selectivity * numtuples);
+        long leafpages = (long) Math.ceil(selectivity * index.getNumLeaves());
+        long datapages = Math.min(numpages, matching);
+        cost = cost + index.getHeight() + leafpages + datapages;
+        return numtuples;
+    }
+
+    /**
+     * Reads the number of tuples and of distinct values of every attribute of the
+     * * base table of the scan, returns the number of tuples
+     **/
+    protected long readStatistics(Scan node) {
         String tablename = node.getTabName();
         String filename = tablename + ".stat";
-        Schema schema = node.getSchema();
+        Schema schema = node.getTableSchema();
         int numAttr = schema.getNumCols();
         BufferedReader in = null;
         try {
@@ -284,13 +456,6 @@ public class PlanCost {
             ht.put(attr, distinctValues);
         }
 
-        /** Number of tuples per page**/
-        long tuplesize = schema.getTupleSize();
-        long pagesize = Math.max(Batch.getPageSize() / tuplesize, 1);
-        long numpages = (long) Math.ceil((double) numtuples / (double) pagesize);
-
-        cost = cost + numpages;
-
         try {
             in.close();
         } catch (IOException io) {
@@ -306,22 +471,26 @@ public class PlanCost {
      * @return the number of tuples
      */
     private long getStatistics(Distinct node) {
-        long outputTuples = getNumTuples();
+        long outputTuples = calculateCost(node.getBase());
+        if (!isFeasible) {
+            return 0;
+        }
         int numOfTuplesInOnePage = Batch.getPageSize() / node.getBase().getSchema().getTupleSize();
         long numOfPages = outputTuples / numOfTuplesInOnePage;
         long numOfBuffer = BufferManager.getNumBuffer();
         cost += (getExternalSortCost(numOfPages, numOfBuffer) + numOfPages);
-        return calculateCost(node.getBase());
+        return outputTuples;
     }
 
     /**
      * Calculates the cost of performing an external sort.
+     * The number of sorted runs depends on how the sorts generate them (see Sort.estimateRuns).
      * @param numOfPages is the number of input pages.
      * @param numOfBuffer is the number of buffer pages available.
      * @return the cost of this sorting process.
      */
     private long getExternalSortCost(long numOfPages, long numOfBuffer) {
-        long numOfSortedRuns = (long) Math.ceil(1.0 * numOfPages / numOfBuffer);
+        long numOfSortedRuns = Sort.estimateRuns(numOfPages, numOfBuffer);
         long numOfPasses = (long) Math.ceil(Math.log(numOfSortedRuns) / Math.log(numOfBuffer - 1)) + 1;
         return 2 * numOfPages * numOfPasses;
     }
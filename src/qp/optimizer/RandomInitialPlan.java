@@ -10,8 +10,10 @@ import qp.utils.*;
 import java.io.FileInputStream;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 
 public class RandomInitialPlan {
 
@@ -76,10 +78,10 @@ public class RandomInitialPlan {
     public void createScanOp() {
         int numtab = fromlist.size();
         Scan tempop = null;
+        HashSet<Attribute> decoded = getDecodedAttributes();
         for (int i = 0; i < numtab; ++i) {  // For each table in from list
             String tabname = fromlist.get(i);
             Scan op1 = new Scan(tabname, OpType.SCAN);
-            tempop = op1;
 
             /** Read the schema of the table from tablename.md file
              ** md stands for metadata
@@ -89,12 +91,21 @@ public class RandomInitialPlan {
                 ObjectInputStream _if = new ObjectInputStream(new FileInputStream(filename));
                 Schema schm = (Schema) _if.readObject();
                 op1.setSchema(schm);
+                op1.setEncodedColumns(getEncodedColumns(schm, decoded));
+                op1.setZoneConditions(getZoneConditions(tabname));
                 _if.close();
             } catch (Exception e) {
                 System.err.println("RandomInitialPlan:Error reading Schema of the table " + filename);
                 System.err.println(e);
                 System.exit(1);
             }
+
+            /** The table is read through an index at random, if one applies **/
+            Scan indexop = createIndexScan(op1);
+            if (indexop != null && RandNumb.flipCoin()) {
+                op1 = indexop;
+            }
+            tempop = op1;
             tab_op_hash.put(tabname, op1);
         }
 
@@ -110,6 +121,84 @@ public class RandomInitialPlan {
 
     }
 
+    /**
+     * Index scan of the table of the given scan on one of its selection
+     * * conditions chosen at random, null if no index applies
+     **/
+    protected static IndexScan createIndexScan(Scan scan) {
+        ArrayList<Condition> usable = IndexScan.getIndexConditions(scan.getZoneConditions());
+        if (usable.isEmpty()) {
+            return null;
+        }
+        Condition cn = usable.get(RandNumb.randInt(0, usable.size() - 1));
+        IndexScan indexop = new IndexScan(scan.getTabName(), cn);
+        indexop.setSchema(scan.getSchema());
+        indexop.setEncodedColumns(scan.getEncodedColumns());
+        indexop.setZoneConditions(scan.getZoneConditions());
+        return indexop;
+    }
+
+    /**
+     * Full scan of the table of the given index scan
+     **/
+    protected static Scan createFullScan(IndexScan scan) {
+        Scan op1 = new Scan(scan.getTabName(), OpType.SCAN);
+        op1.setSchema(scan.getSchema());
+        op1.setEncodedColumns(scan.getEncodedColumns());
+        op1.setZoneConditions(scan.getZoneConditions());
+        return op1;
+    }
+
+    /**
+     * Dictionary encoded attributes compared with an attribute that does not share
+     * * the same dictionary; these have to be decoded to strings by the scan
+     **/
+    private HashSet<Attribute> getDecodedAttributes() {
+        HashSet<Attribute> decoded = new HashSet<>();
+        ArrayList<Condition> conditions = new ArrayList<>(selectionlist);
+        conditions.addAll(joinlist);
+        for (Condition cn : conditions) {
+            if (cn.getRhs() instanceof Attribute) {
+                Attribute lhs = cn.getLhs();
+                Attribute rhs = (Attribute) cn.getRhs();
+                Dictionary left = Dictionary.load(lhs);
+                Dictionary right = Dictionary.load(rhs);
+                if (left == null || right == null || !left.sharesCodes(right)) {
+                    decoded.add(lhs);
+                    decoded.add(rhs);
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * STRING attributes of the table which can stay as dictionary codes
+     **/
+    private ArrayList<Attribute> getEncodedColumns(Schema schm, HashSet<Attribute> decoded) {
+        ArrayList<Attribute> encoded = new ArrayList<>();
+        for (Attribute attr : schm.getAttList()) {
+            if (attr.getType() == Attribute.STRING && !decoded.contains(attr) && Dictionary.load(attr) != null) {
+                encoded.add(attr);
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Selection conditions comparing an attribute of the table with a
+     * * constant, which the scan can check against the zone map of the table
+     **/
+    private ArrayList<Condition> getZoneConditions(String tabname) {
+        ArrayList<Condition> conditions = new ArrayList<>();
+        for (Condition cn : selectionlist) {
+            if (cn.getRhs() instanceof String && cn.getLhs().getTabName().equals(tabname)) {
+                conditions.add(cn);
+            }
+        }
+        return conditions;
+    }
+
     /**
      * Create Selection Operators for each of the
      * * selection condition mentioned in Condition list
@@ -191,6 +280,10 @@ public class RandomInitialPlan {
     private void createOrderByOperator() {
         if (sqlquery.isOrderby()) {
             OrderBy operator = new OrderBy(root, orderbylist);
+            /** DESC follows the whole orderby list, it applies to all of its attributes **/
+            boolean[] descending = new boolean[orderbylist.size()];
+            Arrays.fill(descending, sqlquery.getIsDesc());
+            operator.setDescending(descending);
             operator.setSchema(root.getSchema());
             root = operator;
         }
@@ -8,6 +8,7 @@ import qp.operators.*;
 import qp.utils.Attribute;
 import qp.utils.Condition;
 import qp.utils.RandNumb;
+import qp.utils.RowPredicate;
 import qp.utils.SQLQuery;
 
 import java.util.ArrayList;
@@ -20,6 +21,7 @@ public class RandomOptimizer {
     public static final int METHODCHOICE = 0;  // Selecting neighbor by changing a method for an operator
     public static final int COMMUTATIVE = 1;   // By rearranging the operators by commutative rule
     public static final int ASSOCIATIVE = 2;   // Rearranging the operators by associative rule
+    public static final int ACCESSCHOICE = 3;  // Reading a base table through an index or not
 
     /**
      * constants that needed for the SA algorithm
@@ -31,7 +33,7 @@ public class RandomOptimizer {
     /**
      * Number of altenative methods available for a node as specified above
      **/
-    public static final int NUMCHOICES = 3;
+    public static final int NUMCHOICES = 4;
 
     SQLQuery sqlquery;  // Vector of Vectors of Select + From + Where + GroupBy
     int numJoin;        // Number of joins in this query plan
@@ -64,6 +66,15 @@ public class RandomOptimizer {
                     nj.setNumBuff(numbuff);
                     return nj;
 
+                case JoinType.INDEXNESTED:
+                    /** PlanCost rules out the plans probing an inner table without an index **/
+                    System.out.println("Index Nested Join");
+                    IndexNestedJoin ij = new IndexNestedJoin((Join) node);
+                    ij.setLeft(left);
+                    ij.setRight(right);
+                    ij.setNumBuff(numbuff);
+                    return ij;
+
                 case JoinType.BLOCKNESTED:
                     System.out.println("Block Nested Join");
                     BlockNestedJoin bj = new BlockNestedJoin((Join) node);
@@ -71,15 +82,15 @@ public class RandomOptimizer {
                     bj.setRight(right);
                     bj.setNumBuff(numbuff);
                     return bj;
-                
-//                case JoinType.HASHJOIN:
-//                    System.out.println("Hash Join");
-//                    HashJoin hj = new HashJoin((Join) node);
-//
-//                    hj.setLeft(left);
-//                    hj.setRight(right);
-//                    hj.setNumBuff(numbuff);
-//                    return hj;
+
+                case JoinType.HASHJOIN:
+                    System.out.println("Hash Join");
+                    HashJoin hj = new HashJoin((Join) node);
+                    hj.setLeft(left);
+                    hj.setRight(right);
+                    hj.setNumBuff(numbuff);
+                    return hj;
+
                 case JoinType.SORTMERGE:
                     System.out.println("SortMerge Join");
                     SortMergeJoin sj = new SortMergeJoin((Join) node);
@@ -92,9 +103,39 @@ public class RandomOptimizer {
                     return node;
             }
         } else if (node.getOpType() == OpType.SELECT) {
-            Operator base = makeExecPlan(((Select) node).getBase());
-            ((Select) node).setBase(base);
-            return node;
+            /** The Selects stacked over one input are fused into one checking all
+             ** their conditions, starting with the one of the lowest Select
+             **/
+            ArrayList<Condition> conditions = new ArrayList<>();
+            Operator base = node;
+            while (base.getOpType() == OpType.SELECT) {
+                conditions.addAll(0, ((Select) base).getConditions());
+                base = ((Select) base).getBase();
+            }
+            base = makeExecPlan(base);
+            /** The conditions comparing an attribute with a literal are pushed into a full scan,
+             ** which checks them on the encoded rows, the others are left to the Select
+             **/
+            if (base.getOpType() == OpType.SCAN) {
+                Scan scan = (Scan) base;
+                ArrayList<Condition> pushed = new ArrayList<>(scan.getConditions());
+                ArrayList<Condition> remaining = new ArrayList<>();
+                for (Condition con : conditions) {
+                    if (RowPredicate.isApplicable(con, scan.getSchema())) {
+                        pushed.add(con);
+                    } else {
+                        remaining.add(con);
+                    }
+                }
+                scan.setConditions(pushed);
+                if (remaining.isEmpty()) {
+                    return scan;
+                }
+                conditions = remaining;
+            }
+            Select select = new Select(base, conditions, OpType.SELECT);
+            select.setSchema(node.getSchema());
+            return select;
         } else if (node.getOpType() == OpType.PROJECT) {
             Operator base = makeExecPlan(((Project) node).getBase());
             ((Project) node).setBase(base);
@@ -107,11 +148,29 @@ public class RandomOptimizer {
             Operator base = makeExecPlan(((OrderBy) node).getBase());
             ((OrderBy) node).setBase(base);
             return node;
+        } else if (node.getOpType() == OpType.SCAN) {
+            return makeScan((Scan) node);
         } else {
             return node;
         }
     }
 
+    /**
+     * Chooses how a base table is read: tables above the size
+     * * threshold of MappedScan are scanned through memory mapping
+     **/
+    private static Operator makeScan(Scan node) {
+        if (!(node instanceof MappedScan) && MappedScan.isApplicable(node.getTabName())) {
+            System.out.println("Mapped Scan " + node.getTabName());
+            MappedScan ms = new MappedScan(node.getTabName(), node.getOpType());
+            ms.setSchema(node.getSchema());
+            ms.setEncodedColumns(node.getEncodedColumns());
+            ms.setZoneConditions(node.getZoneConditions());
+            return ms;
+        }
+        return node;
+    }
+
     /**
      * Randomly selects a neighbour
      **/
@@ -131,6 +190,9 @@ public class RandomOptimizer {
             case ASSOCIATIVE:
                 neighbor = neighborAssoc(root, nodeNum);
                 break;
+            case ACCESSCHOICE:
+                neighbor = neighborAccess(root);
+                break;
         }
         return neighbor;
     }
@@ -366,6 +428,56 @@ public class RandomOptimizer {
         return root;
     }
 
+    /**
+     * Switches the access method of a base table with a selection on an indexed
+     * * attribute: a full scan is replaced by an index scan and vice versa
+     * * returns the modified plan
+     **/
+    protected Operator neighborAccess(Operator root) {
+        System.out.println("------------------neighbor by access method change----------------");
+        ArrayList<Select> choices = new ArrayList<>();
+        findAccessChoices(root, choices);
+        if (choices.isEmpty()) {
+            // No index applies to any of the tables, the plan stays as it is
+            return root;
+        }
+        Select node = choices.get(RandNumb.randInt(0, choices.size() - 1));
+        Operator base = node.getBase();
+        if (base.getOpType() == OpType.INDEXSCAN) {
+            node.setBase(RandomInitialPlan.createFullScan((IndexScan) base));
+        } else {
+            node.setBase(RandomInitialPlan.createIndexScan((Scan) base));
+        }
+        return root;
+    }
+
+    /**
+     * Collects the selections directly above a base table that can be read either way
+     **/
+    protected void findAccessChoices(Operator node, ArrayList<Select> choices) {
+        if (node.getOpType() == OpType.JOIN) {
+            findAccessChoices(((Join) node).getLeft(), choices);
+            findAccessChoices(((Join) node).getRight(), choices);
+        } else if (node.getOpType() == OpType.SELECT) {
+            Operator base = ((Select) node).getBase();
+            if (base.getOpType() == OpType.INDEXSCAN) {
+                choices.add((Select) node);
+            } else if (base.getOpType() == OpType.SCAN) {
+                if (!IndexScan.getIndexConditions(((Scan) base).getZoneConditions()).isEmpty()) {
+                    choices.add((Select) node);
+                }
+            } else {
+                findAccessChoices(base, choices);
+            }
+        } else if (node.getOpType() == OpType.PROJECT) {
+            findAccessChoices(((Project) node).getBase(), choices);
+        } else if (node.getOpType() == OpType.DISTINCT) {
+            findAccessChoices(((Distinct) node).getBase(), choices);
+        } else if (node.getOpType() == OpType.ORDERBY) {
+            findAccessChoices(((OrderBy) node).getBase(), choices);
+        }
+    }
+
     /**
      * This is given plan (A X B) X C
      **/
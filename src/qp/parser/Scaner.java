@@ -237,12 +237,12 @@ public class Scaner implements java_cup.runtime.Scanner {
 		/* 24 */ YY_NO_ANCHOR,
 		/* 25 */ YY_NO_ANCHOR,
 		/* 26 */ YY_NO_ANCHOR,
-		/* 27 */ YY_NOT_ACCEPT,
-		/* 28 */ YY_NO_ANCHOR,
-		/* 29 */ YY_NOT_ACCEPT,
-		/* 30 */ YY_NO_ANCHOR,
-		/* 31 */ YY_NOT_ACCEPT,
-		/* 32 */ YY_NO_ANCHOR,
+		/* 27 */ YY_NO_ANCHOR,
+		/* 28 */ YY_NOT_ACCEPT,
+		/* 29 */ YY_NO_ANCHOR,
+		/* 30 */ YY_NOT_ACCEPT,
+		/* 31 */ YY_NO_ANCHOR,
+		/* 32 */ YY_NOT_ACCEPT,
 		/* 33 */ YY_NO_ANCHOR,
 		/* 34 */ YY_NO_ANCHOR,
 		/* 35 */ YY_NO_ANCHOR,
@@ -283,44 +283,45 @@ public class Scaner implements java_cup.runtime.Scanner {
 		/* 70 */ YY_NO_ANCHOR,
 		/* 71 */ YY_NO_ANCHOR,
 		/* 72 */ YY_NO_ANCHOR,
-		/* 73 */ YY_NO_ANCHOR
+		/* 73 */ YY_NO_ANCHOR,
+		/* 74 */ YY_NO_ANCHOR
 	};
 	private int[] yy_cmap = unpackFromString(1,130,
 "0:9,24:2,0,24:2,0:18,28,29,27,30:4,32,35,36,23,30,34,30,40,30,26:10,30:2,38" +
 ",37,39,30:2,18,15,4,17,2,6,12,11,20,25:2,3,9,21,8,14,25,7,1,5,13,22,10,19,1" +
 "6,25,30,31,30:2,25,30,25:13,33,25:5,33,25:6,30:4,0,41:2")[0];
 
-	private int[] yy_rmap = unpackFromString(1,74,
-"0,1,2,3,2:4,4,5,2:6,6:11,7,8,9,6,10,11,12,13,14,15,16,17,18,19,20,21,22,23," +
+	private int[] yy_rmap = unpackFromString(1,75,
+"0,1,2,3,2:4,4,5,2:6,6:12,7,8,9,6,10,11,12,13,14,15,16,17,18,19,20,21,22,23," +
 "24,25,26,27,28,29,30,31,32,33,34,35,36,6,37,38,39,40,41,42,43,44,45,46,47,4" +
 "8,49,50,51")[0];
 
 	private int[][] yy_nxt = unpackFromString(52,42,
-"-1,1,58:2,64,58,65,58,66,67,68,58,69,58:4,70,71,58:4,2,3,58,-1,27,3,29,-1:3" +
-",58,4,5,6,7,8,9,10,11,-1,58,72,58:10,28,58:9,-1:2,58,30,-1:6,58,-1:74,3,-1:" +
-"3,3,-1:50,14,-1:41,15,-1:5,58:22,-1:2,58,30,-1:6,58,-1:9,27:23,-1,27:2,12,2" +
-"7:3,31,-1,27:8,-1:2,58:8,16,58:13,-1:2,58,30,-1:6,58,-1:45,13,-1:31,27,-1:3" +
-",27:3,-1:9,58:12,40,58:9,-1:2,58,30,-1:6,58,-1:9,58:7,41,58:14,-1:2,58,30,-" +
-"1:6,58,-1:9,58:16,73,58:5,-1:2,58,30,-1:6,58,-1:9,58:18,17,58:3,-1:2,58,30," +
-"-1:6,58,-1:9,58:20,18,58,-1:2,58,30,-1:6,58,-1:9,58,42,58:20,-1:2,58,30,-1:" +
-"6,58,-1:9,44,58:21,-1:2,58,30,-1:6,58,-1:9,58:11,19,58:10,-1:2,58,30,-1:6,5" +
-"8,-1:9,58:20,47,58,-1:2,58,30,-1:6,58,-1:9,58:8,20,58:13,-1:2,58,30,-1:6,58" +
-",-1:9,58:6,48,58:15,-1:2,58,30,-1:6,58,-1:9,58:12,49,58:9,-1:2,58,30,-1:6,5" +
-"8,-1:9,58:3,30,58:18,-1:2,58,30,-1:6,58,-1:9,58:4,50,58:17,-1:2,58,30,-1:6," +
-"58,-1:9,58:3,51,58:18,-1:2,58,30,-1:6,58,-1:9,58:4,21,58:17,-1:2,58,30,-1:6" +
-",58,-1:9,58,22,58:20,-1:2,58,30,-1:6,58,-1:9,58:13,63,58:8,-1:2,58,30,-1:6," +
-"58,-1:9,58:19,53,58:2,-1:2,58,30,-1:6,58,-1:9,58:4,23,58:17,-1:2,58,30,-1:6" +
-",58,-1:9,58:14,54,58:7,-1:2,58,30,-1:6,58,-1:9,58:20,56,58,-1:2,58,30,-1:6," +
-"58,-1:9,58:15,24,58:6,-1:2,58,30,-1:6,58,-1:9,58:15,25,58:6,-1:2,58,30,-1:6" +
-",58,-1:9,58:3,57,58:18,-1:2,58,30,-1:6,58,-1:9,58:4,26,58:17,-1:2,58,30,-1:" +
-"6,58,-1:9,58:7,43,58:14,-1:2,58,30,-1:6,58,-1:9,58,46,58:20,-1:2,58,30,-1:6" +
-",58,-1:9,45,58:21,-1:2,58,30,-1:6,58,-1:9,58:6,52,58:15,-1:2,58,30,-1:6,58," +
-"-1:9,58:14,55,58:7,-1:2,58,30,-1:6,58,-1:9,58:7,32,58:14,-1:2,58,30,-1:6,58" +
-",-1:9,58:6,33,58:15,-1:2,58,30,-1:6,58,-1:9,58:6,34,58:15,-1:2,58,30,-1:6,5" +
-"8,-1:9,58:17,35,58,36,58:2,-1:2,58,30,-1:6,58,-1:9,58:10,37,58:11,-1:2,58,3" +
-"0,-1:6,58,-1:9,58:6,59,58:15,-1:2,58,30,-1:6,58,-1:9,58,38,58:17,61,58:2,-1" +
-":2,58,30,-1:6,58,-1:9,58:21,39,-1:2,58,30,-1:6,58,-1:9,58:2,60,58:19,-1:2,5" +
-"8,30,-1:6,58,-1:9,58,62,58:20,-1:2,58,30,-1:6,58,-1:8");
+"-1,1,59:2,65,59,66,59,67,68,69,59,70,59:4,71,72,59:4,2,3,59,-1,28,3,30,-1:3" +
+",59,4,5,6,7,8,9,10,11,-1,59,73,59:10,29,59:9,-1:2,59,31,-1:6,59,-1:74,3,-1:" +
+"3,3,-1:50,14,-1:41,15,-1:5,59:22,-1:2,59,31,-1:6,59,-1:9,28:23,-1,28:2,12,2" +
+"8:3,32,-1,28:8,-1:2,59:8,16,59:13,-1:2,59,31,-1:6,59,-1:45,13,-1:31,28,-1:3" +
+",28:3,-1:9,59:12,41,59:9,-1:2,59,31,-1:6,59,-1:9,59:7,42,59:14,-1:2,59,31,-" +
+"1:6,59,-1:9,59:16,74,59:5,-1:2,59,31,-1:6,59,-1:9,59:18,17,59:3,-1:2,59,31," +
+"-1:6,59,-1:9,59:20,18,59,-1:2,59,31,-1:6,59,-1:9,59,43,59:20,-1:2,59,31,-1:" +
+"6,59,-1:9,45,59:21,-1:2,59,31,-1:6,59,-1:9,59:11,19,59:10,-1:2,59,31,-1:6,5" +
+"9,-1:9,59:20,48,59,-1:2,59,31,-1:6,59,-1:9,59:8,20,59:13,-1:2,59,31,-1:6,59" +
+",-1:9,59:6,49,59:15,-1:2,59,31,-1:6,59,-1:9,59:12,50,59:9,-1:2,59,31,-1:6,5" +
+"9,-1:9,59:3,21,59:18,-1:2,59,31,-1:6,59,-1:9,59:4,51,59:17,-1:2,59,31,-1:6," +
+"59,-1:9,59:3,52,59:18,-1:2,59,31,-1:6,59,-1:9,59:4,22,59:17,-1:2,59,31,-1:6" +
+",59,-1:9,59,23,59:20,-1:2,59,31,-1:6,59,-1:9,59:13,64,59:8,-1:2,59,31,-1:6," +
+"59,-1:9,59:19,54,59:2,-1:2,59,31,-1:6,59,-1:9,59:4,24,59:17,-1:2,59,31,-1:6" +
+",59,-1:9,59:14,55,59:7,-1:2,59,31,-1:6,59,-1:9,59:20,57,59,-1:2,59,31,-1:6," +
+"59,-1:9,59:15,25,59:6,-1:2,59,31,-1:6,59,-1:9,59:15,26,59:6,-1:2,59,31,-1:6" +
+",59,-1:9,59:3,58,59:18,-1:2,59,31,-1:6,59,-1:9,59:4,27,59:17,-1:2,59,31,-1:" +
+"6,59,-1:9,59:7,44,59:14,-1:2,59,31,-1:6,59,-1:9,59,47,59:20,-1:2,59,31,-1:6" +
+",59,-1:9,46,59:21,-1:2,59,31,-1:6,59,-1:9,59:6,53,59:15,-1:2,59,31,-1:6,59," +
+"-1:9,59:14,56,59:7,-1:2,59,31,-1:6,59,-1:9,59:7,33,59:14,-1:2,59,31,-1:6,59" +
+",-1:9,59:6,34,59:15,-1:2,59,31,-1:6,59,-1:9,59:6,35,59:15,-1:2,59,31,-1:6,5" +
+"9,-1:9,59:17,36,59,37,59:2,-1:2,59,31,-1:6,59,-1:9,59:10,38,59:11,-1:2,59,3" +
+"1,-1:6,59,-1:9,59:6,60,59:15,-1:2,59,31,-1:6,59,-1:9,59,39,59:17,62,59:2,-1" +
+":2,59,31,-1:6,59,-1:9,59:21,40,-1:2,59,31,-1:6,59,-1:9,59:2,61,59:19,-1:2,5" +
+"9,31,-1:6,59,-1:9,59,63,59:20,-1:2,59,31,-1:6,59,-1:8");
 
 	public java_cup.runtime.Symbol next_token ()
 		throws java.io.IOException {
@@ -505,60 +506,60 @@ public class Scaner implements java_cup.runtime.Scanner {
 					case 21:
 						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.COUNT,yyline,yychar,new TokenValue(yytext()));
+  return new Symbol(sym.DESC,yyline,yychar,new TokenValue(yytext()));
 }
 					case -22:
 						break;
 					case 22:
 						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.WHERE,yyline,yychar,new TokenValue(yytext()));
+  return new Symbol(sym.COUNT,yyline,yychar,new TokenValue(yytext()));
 }
 					case -23:
 						break;
 					case 23:
 						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.SELECT,yyline,yychar,new TokenValue(yytext()));
+  return new Symbol(sym.WHERE,yyline,yychar,new TokenValue(yytext()));
 }
 					case -24:
 						break;
 					case 24:
 						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.ORDERBY,yyline,yychar,new TokenValue(yytext()));
+  return new Symbol(sym.SELECT,yyline,yychar,new TokenValue(yytext()));
 }
 					case -25:
 						break;
 					case 25:
 						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.GROUPBY,yyline,yychar,new TokenValue(yytext()));
+  return new Symbol(sym.ORDERBY,yyline,yychar,new TokenValue(yytext()));
 }
 					case -26:
 						break;
 					case 26:
 						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.DISTINCT,yyline,yychar,new TokenValue(yytext()));
+  return new Symbol(sym.GROUPBY,yyline,yychar,new TokenValue(yytext()));
 }
 					case -27:
 						break;
-					case 28:
-						{ 
+					case 27:
+						{
   yybegin(YYINITIAL);
-  return new Symbol(sym.ID,yyline,yychar,new TokenValue(yytext())); 
+  return new Symbol(sym.DISTINCT,yyline,yychar,new TokenValue(yytext()));
 }
 					case -28:
 						break;
-					case 30:
+					case 29:
 						{ 
   yybegin(YYINITIAL);
   return new Symbol(sym.ID,yyline,yychar,new TokenValue(yytext())); 
 }
 					case -29:
 						break;
-					case 32:
+					case 31:
 						{ 
   yybegin(YYINITIAL);
   return new Symbol(sym.ID,yyline,yychar,new TokenValue(yytext())); 
@@ -852,6 +853,13 @@ public class Scaner implements java_cup.runtime.Scanner {
 }
 					case -71:
 						break;
+					case 74:
+						{ 
+  yybegin(YYINITIAL);
+  return new Symbol(sym.ID,yyline,yychar,new TokenValue(yytext())); 
+}
+					case -72:
+						break;
 					default:
 						yy_error(YY_E_INTERNAL,false);
 					case -1:
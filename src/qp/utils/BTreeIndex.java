@@ -0,0 +1,524 @@
+/**
+ * Disk based B+-tree over one attribute of a paged table file
+ **/
+
+package qp.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The index on attribute TBL.COL is stored in the file TBL.COL.idx, as a sequence of
+ * fixed size pages. Page 0 is the header page:
+ * <pre>
+ *   int MAGIC | int pageSize | int keyType | byte coded | long numEntries | long numKeys
+ *   | int numPages | int root | int height | int numLeaves | long tableTuples | int tablePageSize
+ *   | int tablePages
+ * </pre>
+ * where the last three fields describe the table file when the index was built: an index
+ * no longer matching them was left by an earlier load of the table and is not used.
+ * Every other page is a node:
+ * <pre>
+ *   byte leaf | int count | int nextLeaf | entry * count
+ * </pre>
+ * A leaf entry is a key followed by the data page and the slot of its tuple, and the leaves
+ * are chained in key order through nextLeaf (-1 for the last one). An internal entry is the
+ * smallest key of a child followed by the page of the child. Keys are stored the way TableFile
+ * stores values; a dictionary encoded STRING attribute (coded) is indexed by its codes, which
+ * are in the order of the strings. The tree is bulk loaded bottom up from the sorted entries.
+ */
+public class BTreeIndex {
+
+    public static final int MAGIC = 0x46494458;  // "FIDX"
+
+    static final int HEADER_SIZE = 61;           // Bytes used on the header page
+    static final int NODE_HEADER_SIZE = 9;       // leaf, count and nextLeaf of a node page
+
+    /** Indexes loaded so far, by file name (null if the attribute has none) **/
+    static final HashMap<String, BTreeIndex> loaded = new HashMap<>();
+
+    final String filename;
+    final Attribute attr;  // Attribute indexed
+    int pageSize;
+    int keyType;        // Attribute type of the keys
+    boolean coded;      // Whether the keys are dictionary codes of a STRING attribute
+    long numEntries;    // Number of tuples indexed
+    long numKeys;       // Number of distinct keys
+    int numPages;       // Number of node pages
+    int root;           // Page of the root node
+    int height;         // Number of levels, 1 if the root is a leaf
+    int numLeaves;      // Number of leaf pages
+    long tableTuples;   // Number of tuples of the table when the index was built
+    int tablePageSize;  // Page size of the table when the index was built
+    int tablePages;     // Number of data pages of the table when the index was built
+    Node rootNode;      // Root node, once read for estimates
+
+    /**
+     * An entry of a leaf, the key and the location of its tuple
+     */
+    public static class Entry implements Comparable<Entry> {
+        final Object key;
+        final long rid;
+
+        public Entry(Object key, int pageno, int slot) {
+            this.key = key;
+            this.rid = rid(pageno, slot);
+        }
+
+        public int compareTo(Entry other) {
+            int flag = ZoneMap.compare(key, other.key);
+            return flag != 0 ? flag : Long.compare(rid, other.rid);
+        }
+    }
+
+    /**
+     * A node page decoded, ptrs holds the rids of a leaf or the child pages of an internal node
+     */
+    static class Node {
+        boolean leaf;
+        int count;
+        int nextLeaf;
+        Object[] keys;
+        long[] ptrs;
+    }
+
+    BTreeIndex(Attribute attr) {
+        this.attr = attr;
+        this.filename = fileName(attr);
+    }
+
+    public static String fileName(Attribute attr) {
+        return attr.getTabName() + "." + attr.getColName() + ".idx";
+    }
+
+    /** Location of a tuple, data page in the upper and slot in the lower half **/
+    public static long rid(int pageno, int slot) {
+        return ((long) pageno << 32) | (slot & 0xffffffffL);
+    }
+
+    public static int pageOf(long rid) {
+        return (int) (rid >>> 32);
+    }
+
+    public static int slotOf(long rid) {
+        return (int) rid;
+    }
+
+    public String getFileName() {
+        return filename;
+    }
+
+    public long getNumEntries() {
+        return numEntries;
+    }
+
+    public long getNumKeys() {
+        return numKeys;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumLeaves() {
+        return numLeaves;
+    }
+
+    public long getTableTuples() {
+        return tableTuples;
+    }
+
+    public boolean isCoded() {
+        return coded;
+    }
+
+    /**
+     * Whether the index was built on the table file with the given header,
+     * * col is the column of the indexed attribute in the table
+     **/
+    public boolean matches(TableFile.Header table, int col) {
+        return tableTuples == table.numTuples && tablePageSize == table.pageSize
+                && tablePages == table.numPages && coded == (table.encodings[col] == TableFile.DICT);
+    }
+
+    /** Whether the index can answer the given selection condition **/
+    public static boolean canSearch(Condition con) {
+        return con.getRhs() instanceof String && con.getExprType() != Condition.NOTEQUAL;
+    }
+
+    /**
+     * Bounds of the keys satisfying the selection condition, as low, lowInclusive, high
+     * * and highInclusive (a null bound is open), null if no key can satisfy it.
+     * * The condition compares the indexed attribute with a literal
+     **/
+    Object[] bounds(Condition con) {
+        Object value;
+        boolean found = true;
+        try {
+            value = ZoneMap.literal(keyType, (String) con.getRhs());
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        if (coded) {
+            /** A literal missing from the dictionary lies just below the code of the next string **/
+            Dictionary dict = Dictionary.load(con.getLhs());
+            found = dict.encode((String) value) >= 0;
+            value = dict.lowerBound((String) value);
+        }
+        int exprtype = con.getExprType();
+        if (exprtype == Condition.EQUAL) {
+            return found ? new Object[]{value, true, value, true} : null;
+        } else if (exprtype == Condition.LESSTHAN) {
+            return new Object[]{null, false, value, false};
+        } else if (exprtype == Condition.LTOE) {
+            return new Object[]{null, false, value, found};
+        } else if (exprtype == Condition.GREATERTHAN) {
+            return new Object[]{value, !found, null, false};
+        } else if (exprtype == Condition.GTOE) {
+            return new Object[]{value, true, null, false};
+        }
+        return new Object[]{null, false, null, false};
+    }
+
+    /** Locations of the tuples satisfying the selection condition, in page order **/
+    public long[] search(Condition con) {
+        Object[] bounds = bounds(con);
+        if (bounds == null) {
+            return new long[0];
+        }
+        return search(bounds[0], (Boolean) bounds[1], bounds[2], (Boolean) bounds[3]);
+    }
+
+    /**
+     * Locations of the tuples whose key equals the given value, in page order. The value
+     * * may be a string or its dictionary code, whichever way the attribute is indexed
+     **/
+    public long[] lookup(Object value) {
+        if (keyType == Attribute.STRING && coded && value instanceof String) {
+            value = Dictionary.load(attr).encode((String) value);
+            if ((Integer) value < 0) {
+                return new long[0];
+            }
+        } else if (keyType == Attribute.STRING && !coded && value instanceof Integer) {
+            value = Dictionary.load(attr).decode((Integer) value);
+        }
+        return search(value, true, value, true);
+    }
+
+    /**
+     * Estimated fraction of the entries satisfying the selection condition, from the
+     * * children of the root node that the bounds fall into (the root is read once)
+     **/
+    public double estimateFraction(Condition con) {
+        Object[] bounds = bounds(con);
+        if (bounds == null || numEntries == 0) {
+            return 0;
+        }
+        Node node = getRootNode();
+        int low = 0;
+        int high = node.count - 1;
+        if (node.leaf) {
+            int matching = 0;
+            for (int i = 0; i < node.count; ++i) {
+                if (inBounds(node.keys[i], bounds)) matching++;
+            }
+            return (double) matching / node.count;
+        }
+        while (bounds[0] != null && low + 1 < node.count && ZoneMap.compare(node.keys[low + 1], bounds[0]) < 0) {
+            low++;
+        }
+        while (bounds[2] != null && high > 0 && ZoneMap.compare(node.keys[high], bounds[2]) > 0) {
+            high--;
+        }
+        return high < low ? 0 : (double) (high - low + 1) / node.count;
+    }
+
+    static boolean inBounds(Object key, Object[] bounds) {
+        if (bounds[0] != null) {
+            int flag = ZoneMap.compare(key, bounds[0]);
+            if (flag < 0 || (flag == 0 && !(Boolean) bounds[1])) return false;
+        }
+        if (bounds[2] != null) {
+            int flag = ZoneMap.compare(key, bounds[2]);
+            if (flag > 0 || (flag == 0 && !(Boolean) bounds[3])) return false;
+        }
+        return true;
+    }
+
+    synchronized Node getRootNode() {
+        if (rootNode == null) {
+            try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+                rootNode = readNode(file.getChannel(), root);
+            } catch (IOException io) {
+                System.out.printf("%s:reading the index file error\n", filename);
+                System.exit(1);
+            }
+        }
+        return rootNode;
+    }
+
+    /** Locations of the tuples with keys between the bounds, a null bound is open **/
+    public long[] search(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        long[] rids = new long[16];
+        int numRids = 0;
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+            FileChannel channel = file.getChannel();
+            Node node = readNode(channel, root);
+            while (!node.leaf) {
+                int i = 0;
+                while (low != null && i + 1 < node.count && ZoneMap.compare(node.keys[i + 1], low) < 0) {
+                    i++;
+                }
+                node = readNode(channel, (int) node.ptrs[i]);
+            }
+            scan:
+            while (true) {
+                for (int i = 0; i < node.count; ++i) {
+                    if (low != null) {
+                        int flag = ZoneMap.compare(node.keys[i], low);
+                        if (flag < 0 || (flag == 0 && !lowInclusive)) continue;
+                    }
+                    if (high != null) {
+                        int flag = ZoneMap.compare(node.keys[i], high);
+                        if (flag > 0 || (flag == 0 && !highInclusive)) break scan;
+                    }
+                    if (numRids == rids.length) {
+                        rids = Arrays.copyOf(rids, 2 * numRids);
+                    }
+                    rids[numRids++] = node.ptrs[i];
+                }
+                if (node.nextLeaf < 0) break;
+                node = readNode(channel, node.nextLeaf);
+            }
+        } catch (IOException io) {
+            System.out.printf("%s:reading the index file error\n", filename);
+            System.exit(1);
+        }
+        rids = Arrays.copyOf(rids, numRids);
+        Arrays.sort(rids);
+        return rids;
+    }
+
+    /** Reads a node page through the BufferPool **/
+    Node readNode(FileChannel channel, int pageno) {
+        BufferPool.Frame frame = BufferPool.pin(filename, pageno, channel, (long) pageno * pageSize, pageSize);
+        ByteBuffer page = frame.getData();
+        Node node = new Node();
+        node.leaf = page.get() == 1;
+        node.count = page.getInt();
+        node.nextLeaf = page.getInt();
+        node.keys = new Object[node.count];
+        node.ptrs = new long[node.count];
+        for (int i = 0; i < node.count; ++i) {
+            node.keys[i] = readKey(page);
+            if (node.leaf) {
+                int dataPage = page.getInt();
+                node.ptrs[i] = rid(dataPage, page.getInt());
+            } else {
+                node.ptrs[i] = page.getInt();
+            }
+        }
+        BufferPool.unpin(frame);
+        return node;
+    }
+
+    Object readKey(ByteBuffer page) {
+        if (keyType == Attribute.REAL) {
+            return page.getFloat();
+        } else if (keyType == Attribute.STRING && !coded) {
+            byte[] bytes = new byte[page.getShort() & 0xffff];
+            page.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return page.getInt();
+    }
+
+    void writeKey(ByteBuffer page, Object key) {
+        if (key instanceof Float) {
+            page.putFloat((Float) key);
+        } else if (key instanceof String) {
+            TableFile.putString(page, (String) key);
+        } else {
+            page.putInt((Integer) key);
+        }
+    }
+
+    int keySize(Object key) {
+        if (key instanceof String) {
+            return 2 + ((String) key).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return 4;
+    }
+
+    /**
+     * Bulk loads the index of the given attribute from its entries and writes it out.
+     * * keyType is the type of the attribute and coded tells whether the keys are
+     * * dictionary codes, table is the header of the table file indexed
+     **/
+    public static BTreeIndex build(Attribute attr, int keyType, boolean coded, ArrayList<Entry> entries,
+                                   TableFile.Header table, int pageSize) {
+        String filename = fileName(attr);
+        BTreeIndex index = new BTreeIndex(attr);
+        index.pageSize = pageSize;
+        index.keyType = keyType;
+        index.coded = coded;
+        index.numEntries = entries.size();
+        index.tableTuples = table.numTuples;
+        index.tablePageSize = table.pageSize;
+        index.tablePages = table.numPages;
+        entries.sort(null);
+        for (int i = 0; i < entries.size(); ++i) {
+            if (i == 0 || ZoneMap.compare(entries.get(i - 1).key, entries.get(i).key) != 0) {
+                index.numKeys++;
+            }
+        }
+
+        BufferPool.invalidate(filename);
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer page = ByteBuffer.allocate(pageSize);
+            int pageno = 1;
+
+            /** Leaves, chained in order **/
+            ArrayList<Object> levelKeys = new ArrayList<>();
+            ArrayList<Integer> levelPages = new ArrayList<>();
+            int start = 0;
+            do {
+                int end = start;
+                int used = NODE_HEADER_SIZE;
+                while (end < entries.size() && used + index.keySize(entries.get(end).key) + 8 <= pageSize) {
+                    used += index.keySize(entries.get(end).key) + 8;
+                    end++;
+                }
+                if (end == start && end < entries.size()) {
+                    System.out.printf("%s:key does not fit in a page of %d bytes\n", filename, pageSize);
+                    System.exit(1);
+                }
+                page.clear();
+                page.put((byte) 1);
+                page.putInt(end - start);
+                page.putInt(end < entries.size() ? pageno + 1 : -1);
+                for (int i = start; i < end; ++i) {
+                    index.writeKey(page, entries.get(i).key);
+                    page.putInt(pageOf(entries.get(i).rid));
+                    page.putInt(slotOf(entries.get(i).rid));
+                }
+                index.writePage(channel, page, pageno);
+                levelKeys.add(start < end ? entries.get(start).key : null);
+                levelPages.add(pageno++);
+                start = end;
+            } while (start < entries.size());
+            index.numLeaves = levelPages.size();
+            index.height = 1;
+
+            /** Internal levels, until a single node is left **/
+            while (levelPages.size() > 1) {
+                ArrayList<Object> upperKeys = new ArrayList<>();
+                ArrayList<Integer> upperPages = new ArrayList<>();
+                start = 0;
+                while (start < levelPages.size()) {
+                    int end = start;
+                    int used = NODE_HEADER_SIZE;
+                    while (end < levelPages.size() && (end - start < 2
+                            || used + index.keySize(levelKeys.get(end)) + 4 <= pageSize)) {
+                        used += index.keySize(levelKeys.get(end)) + 4;
+                        end++;
+                    }
+                    page.clear();
+                    page.put((byte) 0);
+                    page.putInt(end - start);
+                    page.putInt(-1);
+                    for (int i = start; i < end; ++i) {
+                        index.writeKey(page, levelKeys.get(i));
+                        page.putInt(levelPages.get(i));
+                    }
+                    index.writePage(channel, page, pageno);
+                    upperKeys.add(levelKeys.get(start));
+                    upperPages.add(pageno++);
+                    start = end;
+                }
+                levelKeys = upperKeys;
+                levelPages = upperPages;
+                index.height++;
+            }
+            index.root = levelPages.get(0);
+            index.numPages = pageno - 1;
+
+            page.clear();
+            page.putInt(MAGIC);
+            page.putInt(pageSize);
+            page.putInt(keyType);
+            page.put((byte) (coded ? 1 : 0));
+            page.putLong(index.numEntries);
+            page.putLong(index.numKeys);
+            page.putInt(index.numPages);
+            page.putInt(index.root);
+            page.putInt(index.height);
+            page.putInt(index.numLeaves);
+            page.putLong(index.tableTuples);
+            page.putInt(index.tablePageSize);
+            page.putInt(index.tablePages);
+            index.writePage(channel, page, 0);
+        } catch (IOException io) {
+            System.out.printf("%s:writing the index file error\n", filename);
+            return null;
+        }
+        synchronized (BTreeIndex.class) {
+            loaded.put(filename, index);
+        }
+        return index;
+    }
+
+    void writePage(FileChannel channel, ByteBuffer page, int pageno) throws IOException {
+        page.position(0).limit(pageSize);
+        long offset = (long) pageno * pageSize;
+        while (page.hasRemaining()) {
+            offset += channel.write(page, offset);
+        }
+    }
+
+    /** Index on the given attribute, null if the attribute has none **/
+    public static synchronized BTreeIndex load(Attribute attr) {
+        String filename = fileName(attr);
+        if (loaded.containsKey(filename)) {
+            return loaded.get(filename);
+        }
+        BTreeIndex index = null;
+        if (new File(filename).exists()) {
+            try (RandomAccessFile file = new RandomAccessFile(filename, "r")) {
+                ByteBuffer page = ByteBuffer.allocate(HEADER_SIZE);
+                file.getChannel().read(page, 0);
+                page.flip();
+                if (page.remaining() == HEADER_SIZE && page.getInt() == MAGIC) {
+                    index = new BTreeIndex(attr);
+                    index.pageSize = page.getInt();
+                    index.keyType = page.getInt();
+                    index.coded = page.get() == 1;
+                    index.numEntries = page.getLong();
+                    index.numKeys = page.getLong();
+                    index.numPages = page.getInt();
+                    index.root = page.getInt();
+                    index.height = page.getInt();
+                    index.numLeaves = page.getInt();
+                    index.tableTuples = page.getLong();
+                    index.tablePageSize = page.getInt();
+                    index.tablePages = page.getInt();
+                } else {
+                    System.out.printf("%s:not an index file\n", filename);
+                }
+            } catch (IOException io) {
+                System.out.printf("%s:reading the index file error\n", filename);
+            }
+        }
+        loaded.put(filename, index);
+        return index;
+    }
+}
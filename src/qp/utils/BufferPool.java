@@ -0,0 +1,211 @@
+/**
+ * Shared pool of page frames that caches the pages read from paged files
+ **/
+
+package qp.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Pages are identified by file name and page number. A page is pinned while it is
+ * being decoded and unpinned afterwards; only unpinned frames can be reused. The
+ * frame to reuse is chosen with the clock algorithm: the hand sweeps over the frames,
+ * clearing the reference bit of recently used frames and taking the first frame
+ * whose bit is already clear. If all the frames are pinned, the page is read into
+ * a frame of its own that is not cached. The pool is locked while frames are chosen
+ * and pinned, but not while a page is read from disk: the frame is claimed and entered
+ * into the page table first, so that readers of the same page wait for it to be loaded
+ * while readers of other pages go on.
+ */
+public class BufferPool {
+
+    static int numFrames = 4096;                                // Number of frames of the pool
+    static Frame[] frames;                                      // Allocated when the first page is read
+    static HashMap<String, Frame> pageTable = new HashMap<>();  // Frames holding a page, by page key
+    static int hand = 0;                                        // Position of the clock hand
+    static long hits = 0;                                       // Number of pins served from the pool
+    static long misses = 0;                                     // Number of pins that read the page
+
+    /**
+     * A frame of the pool
+     */
+    public static class Frame {
+        String filename;       // File of the page held, null if the frame is free
+        int pageno;            // Number of the page held
+        ByteBuffer data;       // Content of the page
+        int pinCount;          // Number of users of the page
+        boolean referenced;    // Reference bit of the clock algorithm
+        boolean loading;       // Whether the page is still being read into the frame
+        final boolean pooled;  // Whether the frame belongs to the pool
+
+        Frame(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        // Returns a buffer positioned at the start of the page, which the caller may move around freely
+        public ByteBuffer getData() {
+            return data.duplicate();
+        }
+    }
+
+    /** Sets the number of frames, dropping all the cached pages **/
+    public static synchronized void setNumFrames(int num) {
+        numFrames = Math.max(1, num);
+        frames = null;
+        pageTable.clear();
+        hand = 0;
+    }
+
+    public static int getNumFrames() {
+        return numFrames;
+    }
+
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    public static synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    static String key(String filename, int pageno) {
+        return filename + "#" + pageno;
+    }
+
+    /**
+     * Pins the given page, reading it from the channel if it is not in the pool.
+     * * offset and size give the location of the page in the file
+     **/
+    public static Frame pin(String filename, int pageno, FileChannel channel, long offset, int size) {
+        Frame frame = claim(filename, pageno, size);
+        if (!frame.loading) {
+            return frame;
+        }
+        read(channel, frame.data, offset, filename);
+        synchronized (BufferPool.class) {
+            frame.loading = false;
+            BufferPool.class.notifyAll();
+        }
+        return frame;
+    }
+
+    /**
+     * Pins the frame holding the page, waiting if it is being loaded, or claims
+     * * a frame for it that is marked loading and left for the caller to read into
+     **/
+    static synchronized Frame claim(String filename, int pageno, int size) {
+        String key = key(filename, pageno);
+        Frame frame = pageTable.get(key);
+        if (frame != null) {
+            hits++;
+            frame.pinCount++;
+            frame.referenced = true;
+            while (frame.loading) {
+                try {
+                    BufferPool.class.wait();
+                } catch (InterruptedException e) {
+                    System.out.printf("%s:interrupted while waiting for a page\n", filename);
+                    System.exit(1);
+                }
+            }
+            return frame;
+        }
+        misses++;
+        frame = victim();
+        if (frame == null) {
+            frame = new Frame(false);
+        } else if (frame.filename != null) {
+            String oldkey = key(frame.filename, frame.pageno);
+            if (pageTable.get(oldkey) == frame) {
+                pageTable.remove(oldkey);
+            }
+            frame.filename = null;
+        }
+        if (frame.data == null || frame.data.capacity() != size) {
+            frame.data = ByteBuffer.allocate(size);
+        }
+        frame.pinCount = 1;
+        frame.referenced = true;
+        frame.pageno = pageno;
+        frame.loading = true;
+        if (frame.pooled) {
+            frame.filename = filename;
+            pageTable.put(key, frame);
+        }
+        return frame;
+    }
+
+    /** Releases a page pinned before **/
+    public static synchronized void unpin(Frame frame) {
+        if (frame.pinCount > 0) {
+            frame.pinCount--;
+        }
+    }
+
+    /**
+     * Drops the cached pages of a file that is rewritten or deleted. A frame that
+     * * is still pinned only leaves the page table, its users keep the old content
+     * * and the frame is reused once they unpin it
+     **/
+    public static synchronized void invalidate(String filename) {
+        if (frames == null) return;
+        for (Frame frame : frames) {
+            if (filename.equals(frame.filename)) {
+                String key = key(frame.filename, frame.pageno);
+                if (pageTable.get(key) == frame) {
+                    pageTable.remove(key);
+                }
+                if (frame.pinCount == 0) {
+                    frame.filename = null;
+                    frame.referenced = false;
+                }
+            }
+        }
+    }
+
+    /** Chooses an unpinned frame with the clock algorithm, null if all the frames are pinned **/
+    static Frame victim() {
+        if (frames == null) {
+            frames = new Frame[numFrames];
+            for (int i = 0; i < numFrames; ++i) {
+                frames[i] = new Frame(true);
+            }
+        }
+        for (int i = 0; i < 2 * numFrames; ++i) {
+            Frame frame = frames[hand];
+            hand = (hand + 1) % numFrames;
+            if (frame.pinCount > 0) {
+                continue;
+            }
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            return frame;
+        }
+        return null;
+    }
+
+    static void read(FileChannel channel, ByteBuffer buf, long offset, String filename) {
+        buf.clear();
+        try {
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, offset);
+                if (n < 0) break;
+                offset += n;
+            }
+        } catch (IOException io) {
+            System.out.printf("%s:reading the page error\n", filename);
+            System.exit(1);
+        }
+        buf.clear();
+    }
+}
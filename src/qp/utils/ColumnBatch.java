@@ -0,0 +1,194 @@
+/**
+ * ColumnBatch represents a page in columnar form
+ **/
+
+package qp.utils;
+
+import java.util.ArrayList;
+
+/**
+ * The values of every column are kept in an array of their own: INT, TIME and dictionary
+ * coded STRING columns in an int[], REAL columns in a float[] and the other (plain STRING)
+ * columns in an Object[]. Filters do not move rows around, they shrink the selection
+ * vector, which lists the rows still qualifying in row order. Tuples are only built for
+ * the selected rows, when a batch is handed to an operator without a vectorized path.
+ */
+public class ColumnBatch {
+
+    public static final int INTS = 0;     // Column held in an int[]
+    public static final int FLOATS = 1;   // Column held in a float[]
+    public static final int OBJECTS = 2;  // Column held in an Object[]
+
+    final int[] kinds;        // How each column is held
+    final int[][] ints;       // Values of the INTS columns, null for the others
+    final float[][] floats;   // Values of the FLOATS columns, null for the others
+    final Object[][] objects; // Values of the OBJECTS columns, null for the others
+    int size;                 // Number of rows
+    int[] sel;                // Selected rows, in row order
+    int numSelected;          // Number of selected rows
+
+    public ColumnBatch(int[] kinds, int capacity) {
+        this.kinds = kinds;
+        ints = new int[kinds.length][];
+        floats = new float[kinds.length][];
+        objects = new Object[kinds.length][];
+        for (int i = 0; i < kinds.length; ++i) {
+            if (kinds[i] == INTS) {
+                ints[i] = new int[capacity];
+            } else if (kinds[i] == FLOATS) {
+                floats[i] = new float[capacity];
+            } else {
+                objects[i] = new Object[capacity];
+            }
+        }
+        sel = new int[capacity];
+    }
+
+    /** Batch sharing the given columns (and the selection) of another one **/
+    ColumnBatch(ColumnBatch base, int[] cols) {
+        kinds = new int[cols.length];
+        ints = new int[cols.length][];
+        floats = new float[cols.length][];
+        objects = new Object[cols.length][];
+        for (int i = 0; i < cols.length; ++i) {
+            kinds[i] = base.kinds[cols[i]];
+            ints[i] = base.ints[cols[i]];
+            floats[i] = base.floats[cols[i]];
+            objects[i] = base.objects[cols[i]];
+        }
+        size = base.size;
+        sel = base.sel;
+        numSelected = base.numSelected;
+    }
+
+    /**
+     * How the values of an attribute are held, dictionary codes
+     * * are held in an int[] like the other int values
+     **/
+    public static int kindOf(int type, boolean coded) {
+        if (type == Attribute.INT || type == Attribute.TIME || coded) {
+            return INTS;
+        } else if (type == Attribute.REAL) {
+            return FLOATS;
+        }
+        return OBJECTS;
+    }
+
+    /**
+     * Transposes a batch of tuples, STRING values held
+     * * as Integer codes are taken as dictionary codes
+     **/
+    public static ColumnBatch fromBatch(Batch batch, Schema schema) {
+        int numCols = schema.getNumCols();
+        int[] kinds = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            boolean coded = !batch.isEmpty() && batch.get(0).dataAt(i) instanceof Integer;
+            kinds[i] = kindOf(schema.typeOf(i), coded);
+        }
+        ColumnBatch columns = new ColumnBatch(kinds, batch.size());
+        for (int r = 0; r < batch.size(); ++r) {
+            Tuple tuple = batch.get(r);
+            for (int i = 0; i < numCols; ++i) {
+                columns.set(i, r, tuple.dataAt(i));
+            }
+        }
+        columns.setSize(batch.size());
+        return columns;
+    }
+
+    public int getNumCols() {
+        return kinds.length;
+    }
+
+    public int kindOf(int col) {
+        return kinds[col];
+    }
+
+    public int[] ints(int col) {
+        return ints[col];
+    }
+
+    public float[] floats(int col) {
+        return floats[col];
+    }
+
+    public Object[] objects(int col) {
+        return objects[col];
+    }
+
+    public int capacity() {
+        return sel.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Sets the number of rows filled in and selects all of them **/
+    public void setSize(int size) {
+        this.size = size;
+        for (int r = 0; r < size; ++r) {
+            sel[r] = r;
+        }
+        numSelected = size;
+    }
+
+    /** Selected rows, the first numSelected entries are valid and may be overwritten by a filter **/
+    public int[] selection() {
+        return sel;
+    }
+
+    public int numSelected() {
+        return numSelected;
+    }
+
+    public void setNumSelected(int numSelected) {
+        this.numSelected = numSelected;
+    }
+
+    /** Batch of the given columns in the given order, sharing the values and the selection **/
+    public ColumnBatch project(int[] cols) {
+        return new ColumnBatch(this, cols);
+    }
+
+    public Object get(int col, int row) {
+        if (kinds[col] == INTS) {
+            return ints[col][row];
+        } else if (kinds[col] == FLOATS) {
+            return floats[col][row];
+        }
+        return objects[col][row];
+    }
+
+    public void set(int col, int row, Object value) {
+        if (kinds[col] == INTS) {
+            ints[col][row] = (Integer) value;
+        } else if (kinds[col] == FLOATS) {
+            floats[col][row] = (Float) value;
+        } else {
+            objects[col][row] = value;
+        }
+    }
+
+    /** Builds the tuple of the given row out of the given columns, all of them if cols is null **/
+    public Tuple getTuple(int row, int[] cols) {
+        int numCols = cols == null ? kinds.length : cols.length;
+        ArrayList<Object> data = new ArrayList<>(numCols);
+        for (int i = 0; i < numCols; ++i) {
+            data.add(get(cols == null ? i : cols[i], row));
+        }
+        return new Tuple(data);
+    }
+
+    /**
+     * Adds the tuples of the selected rows from the from-th one on to the batch
+     * * until it is full, returns the position of the first selected row left out
+     **/
+    public int appendTo(Batch out, int from, int[] cols) {
+        int k = from;
+        while (k < numSelected && !out.isFull()) {
+            out.add(getTuple(sel[k++], cols));
+        }
+        return k;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Order preserving dictionary of the values of a STRING attribute
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * The dictionary holds the distinct values of an attribute in sorted order, and
+ * a value is encoded as its position. Comparing two codes of the same dictionary
+ * therefore gives the same result as comparing the strings themselves.
+ * The dictionary of attribute TBL.col is stored in the file TBL.col.dict.
+ */
+public class Dictionary {
+
+    /** Dictionaries loaded so far, by attribute name (null if the attribute has none) **/
+    static final HashMap<String, Dictionary> loaded = new HashMap<>();
+
+    final String[] values;  // Distinct values in ascending order
+
+    public Dictionary(String[] sortedValues) {
+        this.values = sortedValues;
+    }
+
+    public static String fileName(Attribute attr) {
+        return attr.getTabName() + "." + attr.getColName() + ".dict";
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /** Value of the given code **/
+    public String decode(int code) {
+        return values[code];
+    }
+
+    /** Code of the given value, or -1 if the value is not in the dictionary **/
+    public int encode(String value) {
+        int pos = Arrays.binarySearch(values, value);
+        return pos >= 0 ? pos : -1;
+    }
+
+    /** Smallest code whose value is greater than or equal to the given value **/
+    public int lowerBound(String value) {
+        int pos = Arrays.binarySearch(values, value);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    /** Whether codes of this and the other dictionary can be compared directly **/
+    public boolean sharesCodes(Dictionary other) {
+        return this == other || Arrays.equals(values, other.values);
+    }
+
+    /** Builds the dictionary of the given set of values **/
+    public static Dictionary build(Collection<String> distinct) {
+        String[] sorted = distinct.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return new Dictionary(sorted);
+    }
+
+    /** Writes the dictionary of the given attribute **/
+    public boolean write(Attribute attr) {
+        String filename = fileName(attr);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(values.length);
+            for (String value : values) {
+                out.writeUTF(value);
+            }
+        } catch (IOException io) {
+            System.out.printf("%s:writing the dictionary file error\n", filename);
+            return false;
+        }
+        loaded.put(attr.getBaseAttribute().toString(), this);
+        return true;
+    }
+
+    /** Dictionary of the given attribute, null if the attribute is not dictionary encoded **/
+    public static synchronized Dictionary load(Attribute attr) {
+        String key = attr.getBaseAttribute().toString();
+        if (loaded.containsKey(key)) {
+            return loaded.get(key);
+        }
+        Dictionary dict = null;
+        String filename = fileName(attr);
+        if (new File(filename).exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+                String[] values = new String[in.readInt()];
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = in.readUTF();
+                }
+                dict = new Dictionary(values);
+            } catch (IOException io) {
+                System.out.printf("%s:reading the dictionary file error\n", filename);
+                System.exit(1);
+            }
+        }
+        loaded.put(key, dict);
+        return dict;
+    }
+}
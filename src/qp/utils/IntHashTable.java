@@ -0,0 +1,128 @@
+/**
+ * Open addressing hash table on primitive int/long keys
+ **/
+
+package qp.utils;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * The keys are kept in a flat long array probed linearly, so that neither a key nor
+ * an entry is an object. A table is used in one of two ways:
+ * - as a multimap from keys to row ids (put, first, next), e.g. for the build side of
+ *   a hash join: the rows themselves stay in the caller's list, the table only chains
+ *   the ids of the rows with the same key through a flat int array
+ * - as a map from keys to dense ids 0, 1, 2, ... (getOrAdd), e.g. to count the distinct
+ *   values of an attribute (see BulkLoader), the id numbering the key in the caller's arrays
+ */
+public class IntHashTable {
+
+    public static final int NONE = -1;  // Returned when there is no (more) row
+
+    long[] keys;       // Key of every slot
+    int[] values;      // Last row added or id of the key of every slot, NONE for a free slot
+    int[] chain;       // Row added before every row with the same key, by row id
+    int numKeys;       // Number of distinct keys
+    int mask;          // Number of slots - 1
+
+    public IntHashTable() {
+        this(16);
+    }
+
+    // expected: Number of keys expected, the table grows beyond it
+    public IntHashTable(int expected) {
+        int slots = 16;
+        while (slots < 2 * expected) {
+            slots *= 2;
+        }
+        keys = new long[slots];
+        values = new int[slots];
+        Arrays.fill(values, NONE);
+        chain = new int[16];
+        mask = slots - 1;
+    }
+
+    public int size() {
+        return numKeys;
+    }
+
+    // Adds a row id under the given key, rows are numbered by the caller from 0
+    public void put(long key, int row) {
+        int slot = slotOf(key);
+        if (values[slot] == NONE) {
+            keys[slot] = key;
+            numKeys++;
+        }
+        if (row >= chain.length) {
+            chain = Arrays.copyOf(chain, Math.max(2 * chain.length, row + 1));
+        }
+        chain[row] = values[slot];
+        values[slot] = row;
+        if (2 * numKeys > mask) {
+            grow();
+        }
+    }
+
+    // Last row added under the given key, NONE if there is none
+    public int first(long key) {
+        return values[slotOf(key)];
+    }
+
+    // Row added under the same key before the given one, NONE if there is none
+    public int next(int row) {
+        return chain[row];
+    }
+
+    // Id of the given key, the next free id if the key is new
+    public int getOrAdd(long key) {
+        int slot = slotOf(key);
+        if (values[slot] == NONE) {
+            keys[slot] = key;
+            values[slot] = numKeys++;
+            if (2 * numKeys > mask) {
+                grow();
+            }
+            return numKeys - 1;
+        }
+        return values[slot];
+    }
+
+    public void forEachKey(LongConsumer action) {
+        for (int slot = 0; slot <= mask; ++slot) {
+            if (values[slot] != NONE) {
+                action.accept(keys[slot]);
+            }
+        }
+    }
+
+    // Slot holding the given key, or the free slot where it would go
+    int slotOf(long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != NONE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    void grow() {
+        long[] oldkeys = keys;
+        int[] oldvalues = values;
+        keys = new long[oldkeys.length * 2];
+        values = new int[oldkeys.length * 2];
+        Arrays.fill(values, NONE);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldkeys.length; ++i) {
+            if (oldvalues[i] != NONE) {
+                int slot = slotOf(oldkeys[i]);
+                keys[slot] = oldkeys[i];
+                values[slot] = oldvalues[i];
+            }
+        }
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
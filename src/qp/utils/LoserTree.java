@@ -0,0 +1,90 @@
+/**
+ * Tournament tree of losers for k-way merging
+ **/
+
+package qp.utils;
+
+/**
+ * The leaves are the k runs being merged and every inner node keeps the run that lost
+ * the match played there, so that the overall winner (the run whose current tuple comes
+ * first) sits above the root. Once the winner has moved on to its next tuple only the
+ * matches on the path from its leaf to the root are replayed, about log k comparisons
+ * with nothing allocated. The runs themselves are kept by the caller, the tree only
+ * deals with run numbers. Ties go to the run with the lower number, which keeps the
+ * merge stable.
+ */
+public class LoserTree {
+
+    /**
+     * Current tuples of the runs being merged
+     */
+    public interface Runs {
+        // Whether the run has no tuple left
+        boolean isDone(int run);
+
+        // Compares the current tuples of two runs that are not done
+        int compare(int run1, int run2);
+    }
+
+    final int k;          // Number of runs
+    final Runs runs;      // Runs being merged
+    final int[] losers;   // Run that lost at every inner node, the inner nodes are 1 to k - 1
+    int winner;           // Run whose current tuple comes first
+
+    public LoserTree(int k, Runs runs) {
+        this.k = k;
+        this.runs = runs;
+        losers = new int[Math.max(k, 1)];
+        /** The leaves are the nodes k to 2k - 1, the children of node n are 2n and 2n + 1 **/
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; ++i) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node > 0; --node) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
+            if (beats(left, right)) {
+                winners[node] = left;
+                losers[node] = right;
+            } else {
+                winners[node] = right;
+                losers[node] = left;
+            }
+        }
+        winner = k == 1 ? 0 : winners[1];
+    }
+
+    // Run whose current tuple comes first
+    public int winner() {
+        return winner;
+    }
+
+    // Whether all the runs are done
+    public boolean isDone() {
+        return k == 0 || runs.isDone(winner);
+    }
+
+    // Finds the new winner once the current one has moved on to its next tuple
+    public void replay() {
+        int run = winner;
+        for (int node = (run + k) >> 1; node > 0; node >>= 1) {
+            if (beats(losers[node], run)) {
+                int loser = run;
+                run = losers[node];
+                losers[node] = loser;
+            }
+        }
+        winner = run;
+    }
+
+    // Whether run1 comes before run2, runs that are done come last
+    boolean beats(int run1, int run2) {
+        if (runs.isDone(run1)) {
+            return false;
+        } else if (runs.isDone(run2)) {
+            return true;
+        }
+        int res = runs.compare(run1, run2);
+        return res < 0 || (res == 0 && run1 < run2);
+    }
+}
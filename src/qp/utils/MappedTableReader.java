@@ -0,0 +1,64 @@
+/**
+ * MappedTableReader reads a paged table file through memory mapped windows instead of read calls
+ */
+
+package qp.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class MappedTableReader extends TableReader {
+
+    static final long WINDOW_SIZE = 64L * 1024 * 1024;  // Number of bytes mapped at a time
+
+    int windowPages;             // Number of pages per mapped window
+    int windowStart;             // First data page of the current window
+    int windowEnd;               // Page after the last data page of the current window
+    MappedByteBuffer window;     // Currently mapped region of the file
+
+    public MappedTableReader(String filename, Schema schema) {
+        super(filename, schema);
+    }
+
+    public boolean open() {
+        if (!super.open()) return false;
+        windowPages = (int) Math.max(1, WINDOW_SIZE / header.pageSize);
+        windowStart = 0;
+        windowEnd = 0;
+        window = null;
+        return true;
+    }
+
+    // Returns a view of the given page inside the mapped window, mapping a new window if required
+    protected ByteBuffer fetchPage(int pageno) {
+        if (window == null || pageno < windowStart || pageno >= windowEnd) {
+            map(pageno);
+        }
+        ByteBuffer view = window.duplicate();
+        int offset = (pageno - windowStart) * header.pageSize;
+        view.limit(offset + header.pageSize);
+        view.position(offset);
+        return view.slice();
+    }
+
+    // Maps the window of pages that starts at the given page
+    private void map(int pageno) {
+        windowStart = pageno;
+        windowEnd = Math.min(header.numPages, pageno + windowPages);
+        long offset = TableFile.pageOffset(header.pageSize, windowStart);
+        long length = (long) (windowEnd - windowStart) * header.pageSize;
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException io) {
+            System.out.printf("%s:mapping the table file error\n", filename);
+            System.exit(1);
+        }
+    }
+
+    public boolean close() {
+        window = null;
+        return super.close();
+    }
+}
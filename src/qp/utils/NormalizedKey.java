@@ -0,0 +1,137 @@
+/**
+ * Byte comparable encoding of the sort attributes of a tuple
+ **/
+
+package qp.utils;
+
+import java.util.Arrays;
+
+/**
+ * Every sort attribute takes a fixed width segment of the key, so that comparing
+ * two keys as unsigned bytes orders the tuples like comparing their attributes one
+ * after the other. INT (and TIME) values are stored big-endian with the sign bit
+ * flipped, REAL values likewise once the other bits of a negative value are flipped
+ * as well, and a descending attribute has all the bits of its segment flipped. Only
+ * the first STRING_CHARS chars of a STRING are kept, as big-endian UTF-16 units padded
+ * with zeros, so keys with STRING attributes may tie where the tuples do not: such a
+ * key is not exact and ties have to be broken by comparing the tuples themselves.
+ * Dictionary codes arriving in place of strings follow the order of the strings and
+ * are stored like INT values.
+ */
+public class NormalizedKey {
+
+    public static final int STRING_CHARS = 8;  // Leading chars of a STRING kept in its segment
+
+    final int[] indices;          // Column index of every sort attribute
+    final boolean[] descending;   // Whether every sort attribute is sorted in descending order
+    final int[] offsets;          // First byte of the segment of every sort attribute
+    final int[] widths;           // Number of bytes of the segment of every sort attribute
+    final int width;              // Number of bytes of a key
+    final boolean exact;          // Whether equal keys mean equal sort attributes
+
+    /**
+     * Keys of the attributes at the given column indexes of tuples of the
+     * * given schema, descending may be null when all of them are ascending
+     **/
+    public NormalizedKey(Schema schema, int[] indices, boolean[] descending) {
+        this.indices = indices;
+        this.descending = descending != null ? descending : new boolean[indices.length];
+        offsets = new int[indices.length];
+        widths = new int[indices.length];
+        int offset = 0;
+        boolean strings = false;
+        for (int i = 0; i < indices.length; ++i) {
+            offsets[i] = offset;
+            if (schema.typeOf(indices[i]) == Attribute.STRING) {
+                widths[i] = 2 * STRING_CHARS;
+                strings = true;
+            } else {
+                widths[i] = 4;
+            }
+            offset += widths[i];
+        }
+        width = offset;
+        exact = !strings;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean isExact() {
+        return exact;
+    }
+
+    public byte[] encode(Tuple tuple) {
+        byte[] key = new byte[width];
+        encode(tuple, key);
+        return key;
+    }
+
+    /**
+     * Writes the key of the tuple into the given array of getWidth() bytes
+     **/
+    public void encode(Tuple tuple, byte[] key) {
+        for (int i = 0; i < indices.length; ++i) {
+            Object value = tuple.dataAt(indices[i]);
+            int offset = offsets[i];
+            int end = offset + widths[i];
+            if (value instanceof Integer) {
+                Arrays.fill(key, offset + 4, end, (byte) 0);
+                putInt(key, offset, (Integer) value ^ Integer.MIN_VALUE);
+            } else if (value instanceof Float) {
+                /** Same order as Float.compareTo, -0.0 comes before 0.0 and NaN last **/
+                int bits = Float.floatToIntBits((Float) value);
+                putInt(key, offset, bits ^ (bits < 0 ? -1 : Integer.MIN_VALUE));
+            } else {
+                String str = (String) value;
+                int length = Math.min(str.length(), (end - offset) / 2);
+                for (int c = 0; c < length; ++c) {
+                    char ch = str.charAt(c);
+                    key[offset + 2 * c] = (byte) (ch >>> 8);
+                    key[offset + 2 * c + 1] = (byte) ch;
+                }
+                Arrays.fill(key, offset + 2 * length, end, (byte) 0);
+            }
+            if (descending[i]) {
+                for (int b = offset; b < end; ++b) {
+                    key[b] = (byte) ~key[b];
+                }
+            }
+        }
+    }
+
+    static void putInt(byte[] key, int offset, int value) {
+        key[offset] = (byte) (value >>> 24);
+        key[offset + 1] = (byte) (value >>> 16);
+        key[offset + 2] = (byte) (value >>> 8);
+        key[offset + 3] = (byte) value;
+    }
+
+    /**
+     * First 8 bytes of the key packed in a long, to be compared unsigned
+     **/
+    public static long prefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < 8; ++i) {
+            prefix = (prefix << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix;
+    }
+
+    public static int compare(byte[] key1, byte[] key2) {
+        return Arrays.compareUnsigned(key1, key2);
+    }
+
+    /**
+     * Compares two keys of the same width given with their prefixes,
+     * * the rest of the keys is only looked at when the prefixes are equal
+     **/
+    public static int compare(long prefix1, byte[] key1, long prefix2, byte[] key2) {
+        int res = Long.compareUnsigned(prefix1, prefix2);
+        if (res != 0 || key1.length <= 8) {
+            return res;
+        }
+        return Arrays.compareUnsigned(key1, 8, key1.length, key2, 8, key2.length);
+    }
+}
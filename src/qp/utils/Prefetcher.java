@@ -0,0 +1,106 @@
+/**
+ * Reads the pages of a file ahead of their consumer on a background thread
+ **/
+
+package qp.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The background thread decodes up to depth pages ahead into a bounded queue,
+ * so that reading and decoding the next pages overlaps with the processing of
+ * the current one by the operators above. If reading a page fails, the failure is
+ * kept, the end marker is queued all the same, and the consumer rethrows the failure
+ * when it reaches the marker instead of waiting forever.
+ */
+public class Prefetcher<T> implements Runnable {
+
+    /**
+     * Source of the pages, reads the next page into out and returns false at the end
+     */
+    public interface Source<T> {
+        boolean read(ArrayList<T> out);
+    }
+
+    final Source<T> source;
+    final ArrayBlockingQueue<ArrayList<T>> queue;  // Pages read ahead, in order
+    final ArrayList<T> end = new ArrayList<>();    // Queued after the last page
+    final Thread thread;
+    volatile boolean stopped = false;              // Set when the consumer no longer wants pages
+    boolean finished = false;                      // Whether the consumer has reached the end
+    volatile Throwable failure;                    // Thrown while reading ahead, null if none
+
+    public Prefetcher(Source<T> source, int depth, String name) {
+        this.source = source;
+        queue = new ArrayBlockingQueue<>(depth + 1);
+        thread = new Thread(this, "prefetch " + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void run() {
+        try {
+            while (!stopped) {
+                ArrayList<T> page = new ArrayList<>();
+                if (!source.read(page)) {
+                    break;
+                }
+                put(page);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Throwable t) {
+            failure = t;
+        }
+        try {
+            put(end);
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    // Queues a page, unless the consumer stopped
+    void put(ArrayList<T> page) throws InterruptedException {
+        while (!stopped && !queue.offer(page, 10, TimeUnit.MILLISECONDS)) {
+            // wait for the consumer to take a page
+        }
+    }
+
+    // Moves the next page into the given list, returns false at the end
+    public boolean next(ArrayList<T> out) {
+        if (finished) return false;
+        ArrayList<T> page = null;
+        try {
+            page = queue.take();
+        } catch (InterruptedException e) {
+            System.out.println("Prefetcher: interrupted while waiting for a page");
+            System.exit(1);
+        }
+        if (page == end) {
+            finished = true;
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new RuntimeException(failure);
+            }
+            return false;
+        }
+        out.addAll(page);
+        return true;
+    }
+
+    // Stops reading ahead and waits for the background thread to finish
+    public void stop() {
+        stopped = true;
+        queue.clear();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            // the thread ends by itself once it sees the flag
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * LSD radix sort of rows by fixed width keys
+ **/
+
+package qp.utils;
+
+import java.util.Arrays;
+
+/**
+ * The keys are the first bytes of normalized keys (see NormalizedKey) packed in
+ * longs and compared unsigned. Every pass distributes the rows by one byte of the
+ * keys, from the last byte of the keys to the first, and keeps the order of the rows
+ * with the same byte, so the sort is stable and takes a number of passes bounded by
+ * the width of the keys, without any comparison. A pass is skipped when all the rows
+ * have the same byte.
+ */
+public class RadixSort {
+
+    /**
+     * Sorts the rows by their keys, of the given number of bytes (at most 8)
+     * * stored in the high bytes of the longs, keys[i] is the key of rows[i]
+     **/
+    public static void sort(long[] keys, int[] rows, int width) {
+        int n = keys.length;
+        long[] from = keys;
+        int[] fromRows = rows;
+        long[] to = new long[n];
+        int[] toRows = new int[n];
+        int[] counts = new int[256];
+        for (int b = Math.min(width, 8) - 1; b >= 0; --b) {
+            int shift = 8 * (7 - b);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < n; ++i) {
+                counts[(int) (from[i] >>> shift) & 0xFF]++;
+            }
+            if (n == 0 || counts[(int) (from[0] >>> shift) & 0xFF] == n) {
+                continue;
+            }
+            /** Turns the counts into the first position of every byte value **/
+            int position = 0;
+            for (int v = 0; v < 256; ++v) {
+                int count = counts[v];
+                counts[v] = position;
+                position += count;
+            }
+            for (int i = 0; i < n; ++i) {
+                int pos = counts[(int) (from[i] >>> shift) & 0xFF]++;
+                to[pos] = from[i];
+                toRows[pos] = fromRows[i];
+            }
+            long[] keySwap = from;
+            from = to;
+            to = keySwap;
+            int[] rowSwap = fromRows;
+            fromRows = toRows;
+            toRows = rowSwap;
+        }
+        /** The rows end up in the given arrays **/
+        if (from != keys) {
+            System.arraycopy(from, 0, keys, 0, n);
+            System.arraycopy(fromRows, 0, rows, 0, n);
+        }
+    }
+}
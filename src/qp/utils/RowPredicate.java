@@ -0,0 +1,180 @@
+/**
+ * Selection condition evaluated on the encoded rows of a page
+ **/
+
+package qp.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * A RowPredicate reads the attributes it compares straight from the page, at the
+ * offsets where the attributes of the row start (see TableFile.locateRow), so that a
+ * row failing it is skipped without any of its values being decoded. Dictionary codes
+ * are compared with the code bounds of the literal and plain strings are only turned
+ * into a String for an order comparison.
+ */
+public interface RowPredicate {
+
+    boolean test(ByteBuffer page, int[] offsets);
+
+    /**
+     * Whether the condition can be checked on the encoded rows: an INT,
+     * * REAL or STRING attribute of the given schema compared with a literal
+     **/
+    static boolean isApplicable(Condition con, Schema schema) {
+        int index = schema.indexOf(con.getLhs());
+        if (index < 0 || !(con.getRhs() instanceof String)) {
+            return false;
+        }
+        int datatype = schema.typeOf(index);
+        return datatype == Attribute.INT || datatype == Attribute.REAL || datatype == Attribute.STRING;
+    }
+
+    /**
+     * Conjunction of the given (applicable) conditions on the rows of a
+     * * table of the given schema stored with the given encodings
+     **/
+    static RowPredicate compile(ArrayList<Condition> conditions, Schema schema, byte[] encodings) {
+        RowPredicate[] predicates = new RowPredicate[conditions.size()];
+        for (int i = 0; i < predicates.length; ++i) {
+            predicates[i] = compile(conditions.get(i), schema, encodings);
+        }
+        if (predicates.length == 1) {
+            return predicates[0];
+        }
+        return (page, offsets) -> {
+            for (RowPredicate predicate : predicates) {
+                if (!predicate.test(page, offsets)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    static RowPredicate compile(Condition con, Schema schema, byte[] encodings) {
+        int index = schema.indexOf(con.getLhs());
+        int datatype = schema.typeOf(index);
+        int exprtype = con.getExprType();
+        String literal = (String) con.getRhs();
+
+        if (datatype == Attribute.INT) {
+            return ofInt(index, exprtype, Integer.parseInt(literal));
+        } else if (datatype == Attribute.REAL) {
+            return ofFloat(index, exprtype, Float.parseFloat(literal));
+        } else if (encodings[index] == TableFile.DICT) {
+            Dictionary dict = Dictionary.load(schema.getAttribute(index));
+            if (dict == null) {
+                System.out.printf("RowPredicate: dictionary of %s is missing\n", schema.getAttribute(index));
+                return (page, offsets) -> false;
+            }
+            /** Codes follow the order of the strings, a literal missing from the dictionary lies just below bound **/
+            int bound = dict.lowerBound(literal);
+            boolean found = dict.encode(literal) >= 0;
+            return ofFlag((page, offsets) -> {
+                int code = page.getInt(offsets[index]);
+                return code < bound ? -1 : (code == bound && found ? 0 : 1);
+            }, exprtype);
+        } else if (exprtype == Condition.EQUAL || exprtype == Condition.NOTEQUAL) {
+            /** Equal strings have equal UTF-8 bytes **/
+            byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+            boolean equal = exprtype == Condition.EQUAL;
+            return (page, offsets) -> equalBytes(page, offsets[index], bytes) == equal;
+        }
+        return ofFlag((page, offsets) -> readString(page, offsets[index]).compareTo(literal), exprtype);
+    }
+
+    static RowPredicate ofInt(int index, int exprtype, int literal) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return (page, offsets) -> page.getInt(offsets[index]) < literal;
+            case Condition.GREATERTHAN:
+                return (page, offsets) -> page.getInt(offsets[index]) > literal;
+            case Condition.LTOE:
+                return (page, offsets) -> page.getInt(offsets[index]) <= literal;
+            case Condition.GTOE:
+                return (page, offsets) -> page.getInt(offsets[index]) >= literal;
+            case Condition.EQUAL:
+                return (page, offsets) -> page.getInt(offsets[index]) == literal;
+            case Condition.NOTEQUAL:
+                return (page, offsets) -> page.getInt(offsets[index]) != literal;
+            default:
+                System.out.println("RowPredicate: Incorrect condition operator");
+                return (page, offsets) -> false;
+        }
+    }
+
+    static RowPredicate ofFloat(int index, int exprtype, float literal) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return (page, offsets) -> page.getFloat(offsets[index]) < literal;
+            case Condition.GREATERTHAN:
+                return (page, offsets) -> page.getFloat(offsets[index]) > literal;
+            case Condition.LTOE:
+                return (page, offsets) -> page.getFloat(offsets[index]) <= literal;
+            case Condition.GTOE:
+                return (page, offsets) -> page.getFloat(offsets[index]) >= literal;
+            case Condition.EQUAL:
+                return (page, offsets) -> page.getFloat(offsets[index]) == literal;
+            case Condition.NOTEQUAL:
+                return (page, offsets) -> page.getFloat(offsets[index]) != literal;
+            default:
+                System.out.println("RowPredicate: Incorrect condition operator");
+                return (page, offsets) -> false;
+        }
+    }
+
+    /**
+     * Comparison of an encoded value with the literal, as returned by compareTo
+     */
+    interface Comparison {
+        int compare(ByteBuffer page, int[] offsets);
+    }
+
+    static RowPredicate ofFlag(Comparison comparison, int exprtype) {
+        switch (exprtype) {
+            case Condition.LESSTHAN:
+                return (page, offsets) -> comparison.compare(page, offsets) < 0;
+            case Condition.GREATERTHAN:
+                return (page, offsets) -> comparison.compare(page, offsets) > 0;
+            case Condition.LTOE:
+                return (page, offsets) -> comparison.compare(page, offsets) <= 0;
+            case Condition.GTOE:
+                return (page, offsets) -> comparison.compare(page, offsets) >= 0;
+            case Condition.EQUAL:
+                return (page, offsets) -> comparison.compare(page, offsets) == 0;
+            case Condition.NOTEQUAL:
+                return (page, offsets) -> comparison.compare(page, offsets) != 0;
+            default:
+                System.out.println("RowPredicate: Incorrect condition operator");
+                return (page, offsets) -> false;
+        }
+    }
+
+    /**
+     * Whether the plain STRING stored at the given offset has the given UTF-8 bytes
+     **/
+    static boolean equalBytes(ByteBuffer page, int offset, byte[] bytes) {
+        int length = page.getShort(offset) & 0xFFFF;
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (page.get(offset + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String readString(ByteBuffer page, int offset) {
+        int length = page.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = page.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
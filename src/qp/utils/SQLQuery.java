@@ -127,7 +127,6 @@ public class SQLQuery {
 
     public void setIsDesc(boolean b) {
         isDesc = b;
-        System.out.println(isDesc);
     }
 
     public boolean getIsDesc() {
@@ -0,0 +1,355 @@
+/**
+ * Binary page layout of base table (.tbl) files
+ **/
+
+package qp.utils;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * A paged table file is a sequence of fixed size pages. Page 0 is the header page:
+ * <pre>
+ *   int MAGIC | int VERSION | int pageSize | int numPages | long numTuples | int numCols | byte encoding * numCols
+ * </pre>
+ * where numPages counts the data pages only. Data page p (p = 0, 1, ...) starts at
+ * byte offset (p + 1) * pageSize and is laid out as
+ * <pre>
+ *   int numRows | row * numRows
+ * </pre>
+ * Each row stores its attributes in schema order: INT and TIME as a 4 byte int, REAL as a
+ * 4 byte float and STRING as a 2 byte length followed by the UTF-8 bytes, so a STRING value
+ * cannot exceed MAX_STRING_BYTES bytes and a longer one is rejected. A STRING attribute
+ * with the DICT encoding is stored as the 4 byte code of its Dictionary instead.
+ * Files written with Java serialization (one Tuple object after another) do not start with
+ * MAGIC, which is how the two formats are told apart.
+ * The columnar layout of a table stores every attribute in a paged file of its own,
+ * named by columnFileName, with a single attribute per row.
+ */
+public class TableFile {
+
+    public static final int MAGIC = 0x46494A49;       // "FIJI"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    public static final byte PLAIN = 0;               // Attribute stored as its own value
+    public static final byte DICT = 1;                // STRING attribute stored as a dictionary code
+    public static final int MAX_STRING_BYTES = 0xFFFF;  // Largest STRING value the 2 byte length can hold
+
+    static final int PAGE_HEADER_SIZE = 4;           // numRows at the start of every data page
+    static final int FILE_HEADER_SIZE = 28;          // Header page size without the encodings
+
+    /** Whether the given file is in the paged format (as opposed to serialized tuples) **/
+    public static boolean isPaged(String filename) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException io) {
+            return false;
+        }
+    }
+
+    /** Name of the file holding the given attribute in the columnar layout **/
+    public static String columnFileName(Attribute attr) {
+        return attr.getTabName() + "." + attr.getColName() + ".col";
+    }
+
+    /** Byte offset of the given data page **/
+    public static long pageOffset(int pageSize, int pageno) {
+        return (long) (pageno + 1) * pageSize;
+    }
+
+    /**
+     * Number of bytes the given tuple takes up in a page,
+     * * the values of DICT attributes are their (Integer) codes
+     **/
+    public static int rowSize(Tuple tuple, Schema schema, byte[] encodings) {
+        int size = 0;
+        for (int i = 0; i < schema.getNumCols(); ++i) {
+            size += valueSize(tuple.dataAt(i), schema.typeOf(i), encodings[i]);
+        }
+        return size;
+    }
+
+    static int valueSize(Object value, int type, byte encoding) {
+        if (type == Attribute.STRING && encoding == PLAIN) {
+            return 2 + ((String) value).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return 4;
+    }
+
+    /**
+     * Appends a STRING value as its length and UTF-8 bytes,
+     * * exits if it is longer than MAX_STRING_BYTES bytes
+     **/
+    public static void putString(ByteBuffer page, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            System.err.printf("TableFile: STRING value of %d bytes is longer than %d bytes\n", bytes.length, MAX_STRING_BYTES);
+            System.exit(1);
+        }
+        page.putShort((short) bytes.length);
+        page.put(bytes);
+    }
+
+    /** Appends the tuple at the current position of the page buffer **/
+    public static void encodeRow(ByteBuffer page, Tuple tuple, Schema schema, byte[] encodings) {
+        for (int i = 0; i < schema.getNumCols(); ++i) {
+            Object value = tuple.dataAt(i);
+            int type = schema.typeOf(i);
+            if (type == Attribute.INT || type == Attribute.TIME || encodings[i] == DICT) {
+                page.putInt((Integer) value);
+            } else if (type == Attribute.REAL) {
+                page.putFloat((Float) value);
+            } else if (type == Attribute.STRING) {
+                putString(page, (String) value);
+            } else {
+                System.err.println("TableFile: Invalid data type");
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Decodes all the rows of the page (positioned at its first byte)
+     * * and appends them to the given list. DICT attributes are turned back
+     * * into strings through the given dictionaries, or kept as Integer codes
+     * * where the dictionary is null
+     **/
+    public static void decodePage(ByteBuffer page, Schema schema, byte[] encodings, Dictionary[] dictionaries, ArrayList<Tuple> out) {
+        int numCols = schema.getNumCols();
+        int[] types = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            types[i] = schema.typeOf(i);
+        }
+        int numRows = page.getInt();
+        for (int r = 0; r < numRows; ++r) {
+            ArrayList<Object> data = new ArrayList<>(numCols);
+            for (int i = 0; i < numCols; ++i) {
+                data.add(decodeValue(page, types[i], encodings[i], dictionaries[i]));
+            }
+            out.add(new Tuple(data));
+        }
+    }
+
+    /**
+     * Decodes all the rows of the page (positioned at its first byte) straight into
+     * * the columns of a ColumnBatch. DICT attributes without a dictionary are kept as
+     * * int codes, the others are turned back into strings
+     **/
+    public static ColumnBatch decodePageColumns(ByteBuffer page, Schema schema, byte[] encodings, Dictionary[] dictionaries) {
+        int numCols = schema.getNumCols();
+        int[] types = new int[numCols];
+        int[] kinds = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            types[i] = schema.typeOf(i);
+            kinds[i] = ColumnBatch.kindOf(types[i], encodings[i] == DICT && dictionaries[i] == null);
+        }
+        int numRows = page.getInt();
+        ColumnBatch out = new ColumnBatch(kinds, numRows);
+        for (int r = 0; r < numRows; ++r) {
+            for (int i = 0; i < numCols; ++i) {
+                if (kinds[i] == ColumnBatch.INTS) {
+                    out.ints[i][r] = page.getInt();
+                } else if (kinds[i] == ColumnBatch.FLOATS) {
+                    out.floats[i][r] = page.getFloat();
+                } else {
+                    out.objects[i][r] = decodeValue(page, types[i], encodings[i], dictionaries[i]);
+                }
+            }
+        }
+        out.setSize(numRows);
+        return out;
+    }
+
+    /**
+     * Decodes the rows of the page (positioned at its first byte) satisfying the filter
+     * * into tuples of the given columns only, the attributes of the other rows and the
+     * * other attributes are skipped without being decoded. A null filter keeps all the
+     * * rows and null columns stand for all of them
+     **/
+    public static void decodePage(ByteBuffer page, Schema schema, byte[] encodings, Dictionary[] dictionaries,
+                                  RowPredicate filter, int[] cols, ArrayList<Tuple> out) {
+        if (filter == null && cols == null) {
+            decodePage(page, schema, encodings, dictionaries, out);
+            return;
+        }
+        int numCols = schema.getNumCols();
+        int[] types = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            types[i] = schema.typeOf(i);
+        }
+        if (cols == null) {
+            cols = allColumns(numCols);
+        }
+        int[] offsets = new int[numCols];
+        int numRows = page.getInt();
+        for (int r = 0; r < numRows; ++r) {
+            int end = locateRow(page, types, encodings, offsets);
+            if (filter == null || filter.test(page, offsets)) {
+                ArrayList<Object> data = new ArrayList<>(cols.length);
+                for (int col : cols) {
+                    page.position(offsets[col]);
+                    data.add(decodeValue(page, types[col], encodings[col], dictionaries[col]));
+                }
+                out.add(new Tuple(data));
+            }
+            page.position(end);
+        }
+    }
+
+    /**
+     * Same as decodePage with a filter and columns, into a ColumnBatch
+     * * holding the given columns of the qualifying rows only
+     **/
+    public static ColumnBatch decodePageColumns(ByteBuffer page, Schema schema, byte[] encodings, Dictionary[] dictionaries,
+                                                RowPredicate filter, int[] cols) {
+        if (filter == null && cols == null) {
+            return decodePageColumns(page, schema, encodings, dictionaries);
+        }
+        int numCols = schema.getNumCols();
+        int[] types = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            types[i] = schema.typeOf(i);
+        }
+        if (cols == null) {
+            cols = allColumns(numCols);
+        }
+        int[] kinds = new int[cols.length];
+        for (int k = 0; k < cols.length; ++k) {
+            kinds[k] = ColumnBatch.kindOf(types[cols[k]], encodings[cols[k]] == DICT && dictionaries[cols[k]] == null);
+        }
+        int[] offsets = new int[numCols];
+        int numRows = page.getInt();
+        ColumnBatch out = new ColumnBatch(kinds, numRows);
+        int m = 0;
+        for (int r = 0; r < numRows; ++r) {
+            int end = locateRow(page, types, encodings, offsets);
+            if (filter == null || filter.test(page, offsets)) {
+                for (int k = 0; k < cols.length; ++k) {
+                    int col = cols[k];
+                    if (kinds[k] == ColumnBatch.INTS) {
+                        out.ints[k][m] = page.getInt(offsets[col]);
+                    } else if (kinds[k] == ColumnBatch.FLOATS) {
+                        out.floats[k][m] = page.getFloat(offsets[col]);
+                    } else {
+                        page.position(offsets[col]);
+                        out.objects[k][m] = decodeValue(page, types[col], encodings[col], dictionaries[col]);
+                    }
+                }
+                m++;
+            }
+            page.position(end);
+        }
+        out.setSize(m);
+        return out;
+    }
+
+    /**
+     * Records the offset of every attribute of the row starting at the current
+     * * position of the page, returns the offset of the next row
+     **/
+    public static int locateRow(ByteBuffer page, int[] types, byte[] encodings, int[] offsets) {
+        int pos = page.position();
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = pos;
+            if (types[i] == Attribute.STRING && encodings[i] == PLAIN) {
+                pos += 2 + (page.getShort(pos) & 0xFFFF);
+            } else {
+                pos += 4;
+            }
+        }
+        return pos;
+    }
+
+    static int[] allColumns(int numCols) {
+        int[] cols = new int[numCols];
+        for (int i = 0; i < numCols; ++i) {
+            cols[i] = i;
+        }
+        return cols;
+    }
+
+    /**
+     * Decodes the values of a page with a single attribute
+     * * of the given type and appends them to the given list
+     **/
+    public static void decodeColumnPage(ByteBuffer page, int type, byte encoding, Dictionary dictionary, ArrayList<Object> out) {
+        int numRows = page.getInt();
+        for (int r = 0; r < numRows; ++r) {
+            out.add(decodeValue(page, type, encoding, dictionary));
+        }
+    }
+
+    static Object decodeValue(ByteBuffer page, int type, byte encoding, Dictionary dictionary) {
+        if (encoding == DICT) {
+            int code = page.getInt();
+            return dictionary == null ? (Object) code : dictionary.decode(code);
+        } else if (type == Attribute.STRING) {
+            int length = page.getShort() & 0xFFFF;
+            String value;
+            if (page.hasArray()) {
+                value = new String(page.array(), page.arrayOffset() + page.position(), length, StandardCharsets.UTF_8);
+                page.position(page.position() + length);
+            } else {
+                byte[] bytes = new byte[length];
+                page.get(bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            return value;
+        } else if (type == Attribute.REAL) {
+            return page.getFloat();
+        } else {
+            return page.getInt();
+        }
+    }
+
+    /**
+     * Header information of a paged table file
+     */
+    public static class Header {
+        public int pageSize;
+        public int numPages;
+        public long numTuples;
+        public byte[] encodings;
+
+        public Header(int pageSize, int numCols) {
+            this.pageSize = pageSize;
+            this.encodings = new byte[numCols];
+        }
+
+        /** Writes the header into the (header) page buffer **/
+        public void write(ByteBuffer page) {
+            page.putInt(MAGIC);
+            page.putInt(VERSION);
+            page.putInt(pageSize);
+            page.putInt(numPages);
+            page.putLong(numTuples);
+            page.putInt(encodings.length);
+            page.put(encodings);
+        }
+
+        /** Reads the header from the start of the file, returns null if malformed **/
+        public static Header read(ByteBuffer page) {
+            if (page.getInt() != MAGIC) return null;
+            if (page.getInt() != VERSION) return null;
+            int pageSize = page.getInt();
+            int numPages = page.getInt();
+            long numTuples = page.getLong();
+            int numCols = page.getInt();
+            Header header = new Header(pageSize, numCols);
+            header.numPages = numPages;
+            header.numTuples = numTuples;
+            page.get(header.encodings);
+            return header;
+        }
+
+        public static int size(int numCols) {
+            return FILE_HEADER_SIZE + numCols;
+        }
+    }
+
+}
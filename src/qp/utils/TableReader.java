@@ -0,0 +1,288 @@
+/**
+ * TableReader is a helper class that reads a paged table file page by page, see TableFile for the layout
+ */
+
+package qp.utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+public class TableReader {
+
+    static int prefetchDepth = 4;  // Default number of pages read ahead, 0 to read on demand
+
+    final String filename;      // Filename to read from
+    final Schema schema;        // Schema of the tuples stored
+
+    TableFile.Header header;    // Header page of the file
+    boolean[] keepCodes;        // DICT attributes returned as Integer codes rather than strings
+    Dictionary[] dictionaries;  // Dictionaries used to decode the other DICT attributes
+    int pageCursor = 0;         // Next data page to be read
+    BufferPool.Frame frame;     // Frame of the page being decoded, pinned until it is decoded
+    RandomAccessFile file;      // Input file
+    FileChannel channel;        // Channel of the input file
+    IntPredicate pageFilter;    // Data pages to be read, null to read all of them
+    RowPredicate rowFilter;     // Rows to be decoded, null to decode all of them
+    int[] columns;              // Attributes decoded, by position in the schema, null for all of them
+    AtomicInteger morsels;      // Next morsel to be claimed, shared by the readers splitting the file
+    int morselPages;            // Number of pages per morsel
+    int morselEnd;              // Page after the last page of the current morsel
+    int prefetch;               // Number of pages read ahead by this reader
+    Prefetcher<?> prefetcher;   // Reads the pages ahead once the first page is asked for
+
+    public TableReader(String filename, Schema schema) {
+        this.filename = filename;
+        this.schema = schema;
+        this.prefetch = prefetchDepth;
+    }
+
+    /** Sets the number of pages that readers opened afterwards read ahead **/
+    public static void setPrefetchDepth(int depth) {
+        prefetchDepth = Math.max(0, depth);
+    }
+
+    public static int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    public String getFileName() {
+        return filename;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public TableFile.Header getHeader() {
+        return header;
+    }
+
+    // Dictionary encoded attributes flagged here are not decoded, must be called before open
+    public void setKeepCodes(boolean[] keepCodes) {
+        this.keepCodes = keepCodes;
+    }
+
+    // Number of pages read ahead on a background thread, must be called before the first page is read
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    // Pages failing the filter are skipped, must be called before the first page is read
+    public void setPageFilter(IntPredicate pageFilter) {
+        this.pageFilter = pageFilter;
+    }
+
+    // Rows failing the filter are skipped and only the given attributes are decoded,
+    // must be called before the first page is read
+    public void setRowFilter(RowPredicate rowFilter, int[] columns) {
+        this.rowFilter = rowFilter;
+        this.columns = columns;
+    }
+
+    // Pages are read by morsels of consecutive pages claimed from the shared counter, so that
+    // the readers sharing it read every page once between them, must be called before open
+    public void setMorsels(AtomicInteger morsels, int morselPages) {
+        this.morsels = morsels;
+        this.morselPages = morselPages;
+    }
+
+    public int getNumPages() {
+        return header.numPages;
+    }
+
+    public int getPageSize() {
+        return header.pageSize;
+    }
+
+    // Opens the file and reads the header page
+    public boolean open() {
+        try {
+            file = new RandomAccessFile(filename, "r");
+            channel = file.getChannel();
+            ByteBuffer buf = ByteBuffer.allocate(TableFile.Header.size(schema.getNumCols()));
+            readFully(buf, 0);
+            buf.flip();
+            header = TableFile.Header.read(buf);
+        } catch (IOException io) {
+            System.out.printf("%s:reading the table file error\n", filename);
+            return false;
+        }
+        if (header == null) {
+            System.out.printf("%s:not a paged table file\n", filename);
+            return false;
+        }
+        dictionaries = new Dictionary[schema.getNumCols()];
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (header.encodings[i] == TableFile.DICT && (keepCodes == null || !keepCodes[i])) {
+                dictionaries[i] = Dictionary.load(schema.getAttribute(i));
+                if (dictionaries[i] == null) {
+                    System.out.printf("%s:dictionary of %s is missing\n", filename, schema.getAttribute(i));
+                    return false;
+                }
+            }
+        }
+        pageCursor = 0;
+        morselEnd = 0;
+        return true;
+    }
+
+    // Positions the reader so that the next page returned is the given page
+    public void seek(int pageno) {
+        if (prefetcher != null) {
+            prefetcher.stop();
+            prefetcher = null;
+        }
+        pageCursor = pageno;
+    }
+
+    // Number of the next page to be read
+    public int getPageCursor() {
+        return pageCursor;
+    }
+
+    // Returns true if all the pages have been read
+    public boolean isEOF() {
+        return pageCursor >= header.numPages;
+    }
+
+    // Decodes the next page into the given list, returns false at the end of the file
+    @SuppressWarnings("unchecked")
+    public boolean nextPage(ArrayList<Tuple> out) {
+        if (prefetch <= 0) return readPage(out);
+        if (prefetcher == null) {
+            prefetcher = new Prefetcher<Tuple>(this::readPage, prefetch, filename);
+        }
+        return ((Prefetcher<Tuple>) prefetcher).next(out);
+    }
+
+    // Decodes the next page into a column batch, returns null at the end of the file
+    @SuppressWarnings("unchecked")
+    public ColumnBatch nextColumns() {
+        ArrayList<ColumnBatch> out = new ArrayList<>(1);
+        if (prefetch <= 0) {
+            if (!readColumns(out)) return null;
+        } else {
+            if (prefetcher == null) {
+                prefetcher = new Prefetcher<ColumnBatch>(this::readColumns, prefetch, filename);
+            }
+            if (!((Prefetcher<ColumnBatch>) prefetcher).next(out)) return null;
+        }
+        return out.get(0);
+    }
+
+    // Decodes the next page of a single attribute file into the given list of values
+    @SuppressWarnings("unchecked")
+    public boolean nextValues(ArrayList<Object> out) {
+        if (prefetch <= 0) return readValues(out);
+        if (prefetcher == null) {
+            prefetcher = new Prefetcher<Object>(this::readValues, prefetch, filename);
+        }
+        return ((Prefetcher<Object>) prefetcher).next(out);
+    }
+
+    // Moves the cursor past the pages rejected by the page filter
+    void skipPages() {
+        claimMorsel();
+        if (pageFilter == null) return;
+        while (!isEOF() && !pageFilter.test(pageCursor)) {
+            pageCursor++;
+            claimMorsel();
+        }
+    }
+
+    // Moves the cursor to the next unclaimed morsel once the current one is read
+    void claimMorsel() {
+        if (morsels == null || pageCursor < morselEnd) return;
+        long first = (long) morsels.getAndIncrement() * morselPages;
+        pageCursor = (int) Math.min(first, header.numPages);
+        morselEnd = Math.min(pageCursor + morselPages, header.numPages);
+    }
+
+    // Reads and decodes the next page on the calling thread
+    boolean readPage(ArrayList<Tuple> out) {
+        skipPages();
+        if (isEOF()) return false;
+        ByteBuffer buf = fetchPage(pageCursor);
+        pageCursor++;
+        TableFile.decodePage(buf, schema, header.encodings, dictionaries, rowFilter, columns, out);
+        releasePage();
+        return true;
+    }
+
+    // Reads and decodes the next page into a column batch on the calling thread
+    boolean readColumns(ArrayList<ColumnBatch> out) {
+        skipPages();
+        if (isEOF()) return false;
+        ByteBuffer buf = fetchPage(pageCursor);
+        pageCursor++;
+        out.add(TableFile.decodePageColumns(buf, schema, header.encodings, dictionaries, rowFilter, columns));
+        releasePage();
+        return true;
+    }
+
+    // Decodes all the rows of the given data page into the given list, regardless of the position
+    // and the row filter of the reader, so that rows can be addressed by their slot
+    public void readPage(int pageno, ArrayList<Tuple> out) {
+        ByteBuffer buf = fetchPage(pageno);
+        TableFile.decodePage(buf, schema, header.encodings, dictionaries, out);
+        releasePage();
+    }
+
+    // Reads and decodes the next page of a single attribute file on the calling thread
+    boolean readValues(ArrayList<Object> out) {
+        skipPages();
+        if (isEOF()) return false;
+        ByteBuffer buf = fetchPage(pageCursor);
+        pageCursor++;
+        TableFile.decodeColumnPage(buf, schema.typeOf(0), header.encodings[0], dictionaries[0], out);
+        releasePage();
+        return true;
+    }
+
+    // Returns a buffer positioned at the start of the given data page, the page is pinned in the BufferPool
+    protected ByteBuffer fetchPage(int pageno) {
+        frame = BufferPool.pin(filename, pageno, channel, TableFile.pageOffset(header.pageSize, pageno), header.pageSize);
+        return frame.getData();
+    }
+
+    // Unpins the page returned by the last fetchPage once it has been decoded
+    protected void releasePage() {
+        if (frame != null) {
+            BufferPool.unpin(frame);
+            frame = null;
+        }
+    }
+
+    void readFully(ByteBuffer buf, long offset) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, offset);
+            if (n < 0) break;
+            offset += n;
+        }
+    }
+
+    // Closes the input file
+    public boolean close() {
+        if (prefetcher != null) {
+            prefetcher.stop();
+            prefetcher = null;
+        }
+        releasePage();
+        if (channel != null) {
+            try {
+                channel.close();
+                file.close();
+                channel = null;
+            } catch (IOException io) {
+                System.out.printf("%s:reading the table file error\n", filename);
+                return false;
+            }
+        }
+        return true;
+    }
+}
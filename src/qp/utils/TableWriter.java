@@ -0,0 +1,145 @@
+/**
+ * TableWriter is a helper class that writes tuples into a paged table file, see TableFile for the layout
+ */
+
+package qp.utils;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+public class TableWriter {
+
+    final String filename;      // Filename to write to
+    final Schema schema;        // Schema of the tuples written
+    final int pageSize;         // Number of bytes per page
+
+    TableFile.Header header;    // Header page, written on close
+    ByteBuffer page;            // Page currently being filled
+    int numRows;                // Number of rows in the current page
+    RandomAccessFile file;      // Output file
+    FileChannel channel;        // Channel of the output file
+    ZoneMap zoneMap;            // Bounds of the values of each page, if requested
+
+    // filename: Filename of the output file to write to
+    // pageSize: Number of bytes per page of the file
+    public TableWriter(String filename, Schema schema, int pageSize) {
+        this.filename = filename;
+        this.schema = schema;
+        this.pageSize = pageSize;
+    }
+
+    public String getFileName() {
+        return filename;
+    }
+
+    public int getNumPages() {
+        return header.numPages;
+    }
+
+    public long getNumTuples() {
+        return header.numTuples;
+    }
+
+    // Opens the file and reserves the header page
+    public boolean open() {
+        if (TableFile.Header.size(schema.getNumCols()) > pageSize) {
+            System.out.printf("%s:page size too small for the table header\n", filename);
+            return false;
+        }
+        BufferPool.invalidate(filename);
+        try {
+            file = new RandomAccessFile(filename, "rw");
+            file.setLength(0);
+            channel = file.getChannel();
+        } catch (IOException io) {
+            System.out.printf("%s:writing the table file error\n", filename);
+            return false;
+        }
+        header = new TableFile.Header(pageSize, schema.getNumCols());
+        page = ByteBuffer.allocate(pageSize);
+        startPage();
+        return true;
+    }
+
+    public TableFile.Header getHeader() {
+        return header;
+    }
+
+    // Sets the encoding of the given attribute, before any tuple is written
+    public void setEncoding(int col, byte encoding) {
+        header.encodings[col] = encoding;
+    }
+
+    // Sets the zone map that collects the bounds of every page written
+    public void setZoneMap(ZoneMap zoneMap) {
+        this.zoneMap = zoneMap;
+    }
+
+    // Supplies a tuple to the writer, the page is written out once the next tuple does not fit
+    // The values of DICT attributes are expected to be their Integer codes
+    public boolean next(Tuple tuple) {
+        int size = TableFile.rowSize(tuple, schema, header.encodings);
+        if (size > pageSize - TableFile.PAGE_HEADER_SIZE) {
+            System.out.printf("%s:tuple does not fit in a page of %d bytes\n", filename, pageSize);
+            return false;
+        }
+        if (size > page.remaining()) {
+            writePage();
+        }
+        TableFile.encodeRow(page, tuple, schema, header.encodings);
+        if (zoneMap != null) zoneMap.add(header.numPages, tuple);
+        numRows++;
+        header.numTuples++;
+        return true;
+    }
+
+    private void startPage() {
+        page.clear();
+        page.putInt(0);  // numRows, filled in when the page is written
+        numRows = 0;
+    }
+
+    // Helper method to write the current page at its position in the file
+    private void writePage() {
+        page.putInt(0, numRows);
+        page.position(page.limit());
+        page.flip();
+        try {
+            long offset = TableFile.pageOffset(pageSize, header.numPages);
+            while (page.hasRemaining()) {
+                offset += channel.write(page, offset);
+            }
+        } catch (IOException io) {
+            System.out.printf("%s:writing the table file error\n", filename);
+            System.out.println(io);
+            System.exit(1);
+        }
+        header.numPages++;
+        startPage();
+    }
+
+    // Flushes the last page and writes the header page
+    public boolean close() {
+        if (channel == null) return true;
+        if (numRows > 0) writePage();
+        try {
+            ByteBuffer headerPage = ByteBuffer.allocate(pageSize);
+            header.write(headerPage);
+            headerPage.clear();
+            long offset = 0;
+            while (headerPage.hasRemaining()) {
+                offset += channel.write(headerPage, offset);
+            }
+            channel.close();
+            file.close();
+            channel = null;
+        } catch (IOException io) {
+            System.out.printf("%s:writing the table file error\n", filename);
+            System.out.println(io);
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,31 +1,33 @@
 /**
  * TupleReader is a helper class that allows other operators to read tuples from a file in a Batch by Batch form
+ * The file is one written by TupleWriter, its pages are read through the BufferPool
  */
 
 package qp.utils;
 
-import qp.utils.*;
-
-import java.util.*;
-import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class TupleReader {
 
-    final String filename;    // Filename to write to
+    final String filename;      // Filename to read from
+    final Schema schema;        // Schema of the tuples stored
     final int batchsize;        // Number of tuples per out batch
 
-    Batch inBatch;                            // Currently buffered input
-    int readCursor = 0;                    // Cursor within inBatch
-    boolean completed = false;    // Whether EOF has been reached
-    int numBatch = 0;                        // Number of batch read
-    int numTuple = 0;                        // Number of tuples read
-    Tuple peekTuple = null;            // The next tuple of the batch (if peeked)
-    ObjectInputStream in;                // Input file stream
+    ArrayList<Tuple> inPage;    // Tuples of the page currently buffered
+    int readCursor = 0;         // Cursor within inPage
+    boolean completed = false;  // Whether EOF has been reached
+    int numBatch = 0;           // Number of pages read
+    int numTuple = 0;           // Number of tuples read
+    Tuple peekTuple = null;     // The next tuple of the batch (if peeked)
+    TableReader in;             // Input file
 
     // filename: Filename of the output file to read from
+    // schema: Schema of the tuples stored
     // batchsize: Number of tuples per batch
-    public TupleReader(String filename, int batchsize) {
+    public TupleReader(String filename, Schema schema, int batchsize) {
         this.filename = filename;
+        this.schema = schema;
         this.batchsize = batchsize;
     }
 
@@ -53,61 +55,48 @@ public class TupleReader {
 
     // Opens the input file and initializes the class for reading
     public boolean open() {
-        try {
-            in = new ObjectInputStream(new FileInputStream(filename));
-        } catch (IOException io) {
+        in = new TableReader(filename, schema);
+        // Dictionary codes were written as they came, and are returned as such
+        boolean[] keepCodes = new boolean[schema.getNumCols()];
+        Arrays.fill(keepCodes, true);
+        in.setKeepCodes(keepCodes);
+        if (!in.open()) {
             System.out.printf("%s:reading the temporary file error", filename);
             return false;
         }
-        inBatch = null;
+        inPage = new ArrayList<>();
         numBatch = 0;
         numTuple = 0;
         readCursor = 0;
+        peekTuple = null;
         completed = false;
         return true;
     }
 
     // Allows the caller to 'peek' at the next tuple.
     // Returns the next tuple but does not actually removes it from the stream
-    // This is lazily evaluated and will only read the next batch from the file if necessary
+    // This is lazily evaluated and will only read the next page from the file if necessary
     public Tuple peek() {
         if (completed) return null;
         // Already know the next tuple
         if (peekTuple != null) return peekTuple;
 
-        // If the next tuple is in the next batch, we have to read from the file
-        if (inBatch == null) {
-            try {
-                while (true) {
-                    inBatch = (Batch) in.readObject();
-                    numBatch++;
-                    if (inBatch.size() > 0) break;
-                }
-            } catch (EOFException e) {
-                // No more batch in the file
-                peekTuple = null;
+        // If the next tuple is in the next page, we have to read from the file
+        while (readCursor >= inPage.size()) {
+            inPage.clear();
+            readCursor = 0;
+            if (!in.nextPage(inPage)) {
+                // No more page in the file
                 completed = true;
                 this.close();
                 return null;
-            } catch (ClassNotFoundException c) {
-                System.out.printf("%s:Some error in deserialization\n", filename);
-                System.exit(1);
-            } catch (IOException io) {
-                System.out.printf("%s:temporary file reading error\n", filename);
-                System.exit(1);
             }
+            numBatch++;
         }
 
         // Read the next tuple from our already cached page
-        peekTuple = inBatch.get(readCursor);
+        peekTuple = inPage.get(readCursor);
         readCursor++;
-
-        // If reach end of the batch/page, reset the readCursor to prepare to read the next batch
-        // However, do not actually read the next batch at this stage
-        if (readCursor >= inBatch.size()) {
-            readCursor = 0;
-            inBatch = null; // deallocate buffer
-        }
         return peekTuple;
     }
 
@@ -116,7 +105,7 @@ public class TupleReader {
         // Returns the next tuple, already computed by peek()
         Tuple curTuple = peek();
         // End of file encountered
-        if (peek() == null) return null;
+        if (curTuple == null) return null;
         // Advances the stream by setting peekTuple to null
         peekTuple = null;
         // Increases the number of tuples read by 1
@@ -124,21 +113,28 @@ public class TupleReader {
         return curTuple;
     }
 
+    // Returns the next batch of at most batchsize tuples, null if the end of the file is encountered
+    public Batch nextBatch() {
+        if (isEOF()) return null;
+        Batch batch = new Batch(batchsize);
+        while (!batch.isFull() && !isEOF()) {
+            batch.add(next());
+        }
+        return batch;
+    }
+
     // Signals the TupleReader to stop reading from the file
     // Buffers and the input file will be closed here
     public boolean close() {
-        inBatch = null;        // deallocate buffer
+        inPage = null;        // deallocate buffer
         peekTuple = null;
         completed = true;
         if (in != null) {
-            try {
-                in.close();
-                in = null;
-            } catch (IOException io) {
+            if (!in.close()) {
                 System.out.printf("%s:reading the temporary file error", filename);
-                System.out.println(io);
                 return false;
             }
+            in = null;
         }
         return true;
     }
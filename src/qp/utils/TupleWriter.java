@@ -1,28 +1,26 @@
 /**
  * TupleWriter is a helper class that allows other operators to write tuples to a file in a Batch by Batch form
+ * The file is written in the paged format of TableFile, so that it is read back through the BufferPool
  */
 
 package qp.utils;
 
-import qp.utils.*;
-
-import java.util.*;
-import java.io.*;
-
 public class TupleWriter {
 
     final String filename;    // Filename to write to
-    final int batchsize;        // Number of tuples per out batch
+    final Schema schema;      // Schema of the tuples written
+    final int batchsize;      // Number of tuples per out batch
 
-    Batch outBatch;
-    int numBatch = 0;                        // Number of batch written
-    int numTuple = 0;                        // Number of tuples added
-    ObjectOutputStream out;            // Output file stream
+    TableWriter out;          // Output file
+    int numBatch = 0;         // Number of batch written
+    int numTuple = 0;         // Number of tuples added
 
     // filename: Filename of the output file to write to
+    // schema: Schema of the tuples written
     // batchsize: Number of tuples per batch
-    public TupleWriter(String filename, int batchsize) {
+    public TupleWriter(String filename, Schema schema, int batchsize) {
         this.filename = filename;
+        this.schema = schema;
         this.batchsize = batchsize;
     }
 
@@ -42,58 +40,54 @@ public class TupleWriter {
         return filename;
     }
 
+    // Number of bytes per page of temporary files
+    // At least TableFile.DEFAULT_PAGE_SIZE, so that strings longer than their declared size still fit
+    public static int getPageSize() {
+        return Math.max(Batch.getPageSize(), TableFile.DEFAULT_PAGE_SIZE);
+    }
+
     // Opens the file and initializes the class for writing
     public boolean open() {
-        try {
-            out = new ObjectOutputStream(new FileOutputStream(filename));
-        } catch (IOException io) {
+        out = new TableWriter(filename, schema, getPageSize());
+        if (!out.open()) {
             System.out.printf("%s:writing the temporary file error", filename);
             return false;
         }
-        outBatch = null;
         numBatch = 0;
         numTuple = 0;
         return true;
     }
 
     // Supplies a tuple to the tuple writer
-    // Tuple writer will store the tuples and writes to the file on Batch at a time
+    // Tuple writer will store the tuples and writes to the file one page at a time
     public boolean next(Tuple nextTuple) {
-        if (outBatch == null) {
-            outBatch = new Batch(batchsize);
+        if (numTuple == 0) setEncodings(nextTuple);
+        if (!out.next(nextTuple)) {
+            System.exit(1);
         }
-        outBatch.add(nextTuple);
         ++numTuple;
-        if (outBatch.isFull())
-            writeBatch();        // Immediately writes to file when we have enough tuples to fill a BAtch
+        if (numTuple % batchsize == 0) ++numBatch;
         return true;
     }
 
-    // Helper method to write a single batch to the output file
-    private void writeBatch() {
-        try {
-            out.writeObject(outBatch);
-            outBatch = null;        // deallocate output buffer --> saves memory
-            ++numBatch;
-        } catch (IOException io) {
-            System.out.printf("%s:writing the temporary file error", filename);
-            System.out.println(io);
-            System.exit(1);
+    // STRING attributes that arrive as dictionary codes are stored as codes
+    private void setEncodings(Tuple tuple) {
+        for (int i = 0; i < schema.getNumCols(); ++i) {
+            if (schema.typeOf(i) == Attribute.STRING && tuple.dataAt(i) instanceof Integer) {
+                out.setEncoding(i, TableFile.DICT);
+            }
         }
     }
 
     // Signals the TupleWriter to finish writing all the tuples to the file
     public boolean close() {
-        if (outBatch != null) writeBatch();  // Unfilled batch (if any) will be flushed to the file
+        if (numTuple % batchsize != 0) ++numBatch;  // Unfilled batch (if any) is counted too
         if (out != null) {
-            try {
-                out.close();
-                out = null;
-            } catch (IOException io) {
+            if (!out.close()) {
                 System.out.printf("%s:writing the temporary file error", filename);
-                System.out.println(io);
                 System.exit(1);
             }
+            out = null;
         }
         return true;
     }
@@ -0,0 +1,189 @@
+/**
+ * Minimum and maximum value of every attribute on every page of a paged table file
+ **/
+
+package qp.utils;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The zone map of table TBL is stored in the file TBL.zone. STRING attributes
+ * keep their string bounds even when the table is dictionary encoded, so that
+ * the zone map can be checked against the literals of the query directly.
+ */
+public class ZoneMap implements Serializable {
+
+    /** Value computed for the class as first written, so that existing zone files still load **/
+    private static final long serialVersionUID = 1417599941540384639L;
+
+    /** Zone maps loaded so far, by table name (null if the table has none) **/
+    static final HashMap<String, ZoneMap> loaded = new HashMap<>();
+
+    final int numCols;
+    final ArrayList<Object[]> mins = new ArrayList<>();  // Smallest value of each attribute, per page
+    final ArrayList<Object[]> maxs = new ArrayList<>();  // Largest value of each attribute, per page
+
+    public ZoneMap(int numCols) {
+        this.numCols = numCols;
+    }
+
+    public static String fileName(String tabname) {
+        return tabname + ".zone";
+    }
+
+    public int getNumPages() {
+        return mins.size();
+    }
+
+    /** Widens the bounds of the given page with the values of the tuple **/
+    public void add(int pageno, Tuple tuple) {
+        for (int i = 0; i < numCols; ++i) {
+            add(pageno, i, tuple.dataAt(i));
+        }
+    }
+
+    /** Widens the bounds of the given attribute on the given page with the value **/
+    public void add(int pageno, int col, Object value) {
+        while (mins.size() <= pageno) {
+            mins.add(new Object[numCols]);
+            maxs.add(new Object[numCols]);
+        }
+        Object[] min = mins.get(pageno);
+        Object[] max = maxs.get(pageno);
+        if (min[col] == null || compare(value, min[col]) < 0) min[col] = value;
+        if (max[col] == null || compare(value, max[col]) > 0) max[col] = value;
+    }
+
+    /** Appends the pages of the other zone map after the pages of this one **/
+    public void append(ZoneMap other) {
+        mins.addAll(other.mins);
+        maxs.addAll(other.maxs);
+    }
+
+    /** Replaces the bounds of dictionary encoded attributes, given as codes, by their strings **/
+    public void decode(Dictionary[] dictionaries) {
+        for (int p = 0; p < mins.size(); ++p) {
+            for (int i = 0; i < numCols; ++i) {
+                if (dictionaries[i] != null && mins.get(p)[i] != null) {
+                    mins.get(p)[i] = dictionaries[i].decode((Integer) mins.get(p)[i]);
+                    maxs.get(p)[i] = dictionaries[i].decode((Integer) maxs.get(p)[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the given page may hold tuples that satisfy the selection condition,
+     * * schema is the schema of the whole table
+     **/
+    public boolean mayMatch(int pageno, Schema schema, Condition con) {
+        int index = schema.indexOf(con.getLhs());
+        if (index < 0 || !(con.getRhs() instanceof String) || pageno >= mins.size()) {
+            return true;
+        }
+        Object min = mins.get(pageno)[index];
+        Object max = maxs.get(pageno)[index];
+        if (min == null) {
+            return false;
+        }
+        Object value;
+        try {
+            value = literal(schema.typeOf(index), (String) con.getRhs());
+        } catch (NumberFormatException nfe) {
+            return true;
+        }
+        int exprtype = con.getExprType();
+        if (exprtype == Condition.LESSTHAN) {
+            return compare(min, value) < 0;
+        } else if (exprtype == Condition.GREATERTHAN) {
+            return compare(max, value) > 0;
+        } else if (exprtype == Condition.LTOE) {
+            return compare(min, value) <= 0;
+        } else if (exprtype == Condition.GTOE) {
+            return compare(max, value) >= 0;
+        } else if (exprtype == Condition.EQUAL) {
+            return compare(min, value) <= 0 && compare(max, value) >= 0;
+        } else if (exprtype == Condition.NOTEQUAL) {
+            return compare(min, value) != 0 || compare(max, value) != 0;
+        }
+        return true;
+    }
+
+    /** Whether the given page may hold tuples that satisfy all the conditions **/
+    public boolean mayMatch(int pageno, Schema schema, ArrayList<Condition> conditions) {
+        for (Condition con : conditions) {
+            if (!mayMatch(pageno, schema, con)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Fraction of the pages that may hold tuples satisfying all the conditions **/
+    public double getFraction(Schema schema, ArrayList<Condition> conditions) {
+        if (mins.isEmpty()) {
+            return 1;
+        }
+        int matching = 0;
+        for (int p = 0; p < mins.size(); ++p) {
+            if (mayMatch(p, schema, conditions)) {
+                matching++;
+            }
+        }
+        return (double) matching / mins.size();
+    }
+
+    /** Value of a literal of the query, as stored for the given type **/
+    static Object literal(int type, String value) {
+        if (type == Attribute.INT || type == Attribute.TIME) {
+            return Integer.valueOf(value);
+        } else if (type == Attribute.REAL) {
+            return Float.valueOf(value);
+        }
+        return value;
+    }
+
+    /** Compares values the way Select does, REAL values as primitive floats **/
+    @SuppressWarnings("unchecked")
+    static int compare(Object a, Object b) {
+        if (a instanceof Float && b instanceof Float) {
+            float x = (Float) a;
+            float y = (Float) b;
+            return x < y ? -1 : (x > y ? 1 : 0);
+        }
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    /** Writes the zone map of the given table **/
+    public boolean write(String tabname) {
+        String filename = fileName(tabname);
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeObject(this);
+        } catch (IOException io) {
+            System.out.printf("%s:writing the zone map file error\n", filename);
+            return false;
+        }
+        loaded.put(tabname, this);
+        return true;
+    }
+
+    /** Zone map of the given table, null if the table has none **/
+    public static synchronized ZoneMap load(String tabname) {
+        if (loaded.containsKey(tabname)) {
+            return loaded.get(tabname);
+        }
+        ZoneMap zoneMap = null;
+        String filename = fileName(tabname);
+        if (new File(filename).exists()) {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+                zoneMap = (ZoneMap) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                System.out.printf("%s:reading the zone map file error\n", filename);
+            }
+        }
+        loaded.put(tabname, zoneMap);
+        return zoneMap;
+    }
+}